@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The token lookup every authenticated request does, with random and with HMAC-signed tokens. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthTokenBenchmark {
+    @Param({"false", "true"})
+    boolean signed;
+
+    private BounceResourceConfig config;
+    private String token;
+
+    @Setup
+    public final void setup() {
+        Properties properties = new Properties();
+        properties.setProperty(Constants.PROPERTY_PROVIDER, "transient");
+        properties.setProperty(SwiftProxy.PROPERTY_METRICS_JMX, "false");
+        if (signed) {
+            properties.setProperty(SwiftProxy.PROPERTY_AUTH_TOKEN_SECRET, "benchmark-secret");
+        }
+        config = new BounceResourceConfig(properties, null);
+        token = config.authenticate("test:tester", "testing");
+    }
+
+    @TearDown
+    public final void tearDown() {
+        config.shutdown();
+    }
+
+    @Benchmark
+    public final Object getBlobStore() {
+        return config.getBlobStore(token);
+    }
+
+    @Benchmark
+    public final Object getBlobStoreUnknownToken() {
+        return config.getBlobStore("AUTH_tk00000000000000000000000000000000");
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.RuntimeDelegate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Content-Type parsing and formatting through {@link RuntimeDelegateImpl}, which every object PUT and GET does. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaTypeBenchmark {
+    @Param({"application/octet-stream", "text/plain; charset=utf-8", "application/x-www-form-urlencoded",
+            "not a media type"})
+    String contentType;
+
+    private RuntimeDelegate.HeaderDelegate<MediaType> delegate;
+    private MediaType mediaType;
+
+    @Setup
+    public final void setup() {
+        RuntimeDelegate runtimeDelegate = RuntimeDelegate.getInstance();
+        if (!(runtimeDelegate instanceof RuntimeDelegateImpl)) {
+            runtimeDelegate = new RuntimeDelegateImpl(runtimeDelegate);
+            RuntimeDelegate.setInstance(runtimeDelegate);
+        }
+        delegate = runtimeDelegate.createHeaderDelegate(MediaType.class);
+        mediaType = delegate.fromString(contentType);
+    }
+
+    @Benchmark
+    public final MediaType fromString() {
+        return delegate.fromString(contentType);
+    }
+
+    @Benchmark
+    public final String format() {
+        return delegate.toString(mediaType);
+    }
+}
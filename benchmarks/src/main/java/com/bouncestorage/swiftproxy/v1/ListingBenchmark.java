@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.bouncestorage.swiftproxy.BlobStoreResource;
+import com.bouncestorage.swiftproxy.BounceResourceConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Serialization of a container listing in each Swift format, as written by {@link BlobStoreResource#output}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+    @Param({"json", "xml", "plain"})
+    String format;
+
+    @Param({"10", "10000"})
+    int objects;
+
+    private MediaType mediaType;
+    private List<ContainerResource.ObjectEntry> entries;
+
+    @Setup
+    public final void setup() {
+        mediaType = BounceResourceConfig.getMediaType(format);
+        entries = new ArrayList<>(objects);
+        Date lastModified = new Date();
+        for (int i = 0; i < objects; i++) {
+            entries.add(new ContainerResource.ObjectEntry(String.format("photos/2015/%08d.jpg", i),
+                    "d41d8cd98f00b204e9800998ecf8427e", i, "image/jpeg", lastModified));
+        }
+    }
+
+    @Benchmark
+    public final void output(Blackhole blackhole) throws IOException {
+        Response response = Listings.list(entries.iterator(), mediaType).build();
+        ((StreamingOutput) response.getEntity()).write(new BlackholeOutputStream(blackhole));
+    }
+
+    private static final class Listings extends BlobStoreResource {
+        static Response.ResponseBuilder list(Iterator<?> entries, MediaType format) {
+            return output("container", "benchmark", "object", entries, format);
+        }
+    }
+
+    /** Consumes the listing without keeping it, so only the serialization is measured. */
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
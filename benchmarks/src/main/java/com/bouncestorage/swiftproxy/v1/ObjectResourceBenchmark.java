@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Strings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Request parsing and manifest helpers of {@link ObjectResource} that run without a backend. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectResourceBenchmark {
+    @Param({"bytes=0-1023", "bytes=-512", "bytes=0-0, 100-199, 1000-, -10"})
+    String range;
+
+    @Param({"10", "1000"})
+    int segments;
+
+    private ObjectResource resource;
+    private List<ObjectResource.ManifestEntry> manifest;
+
+    @Setup
+    public final void setup() {
+        resource = new ObjectResource();
+        manifest = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            ObjectResource.ManifestEntry entry = new ObjectResource.ManifestEntry();
+            entry.container = "segments";
+            entry.object = "object/" + i;
+            entry.etag = Strings.repeat(Integer.toHexString(i % 16), 32);
+            entry.size_bytes = 1024 * 1024;
+            manifest.add(entry);
+        }
+    }
+
+    @Benchmark
+    public final Object parseRange() {
+        return resource.parseRange(range);
+    }
+
+    @Benchmark
+    public final Object getManifestTotalSizeAndETag() {
+        return ObjectResource.getManifestTotalSizeAndETag(manifest);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.bouncestorage.swiftproxy.SwiftProxy;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+
+import org.jclouds.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Object GETs through an in-process proxy over the {@code transient} provider: plain and ranged reads of a single
+ * object, and whole and ranged reads of a static large object, which stream through the manifest input stream and its
+ * segment read-ahead. Each benchmark is run with the platform worker pool and with virtual threads; the client runs
+ * in the same JVM, so its allocations are part of the {@code -prof gc} numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ProxyBenchmark {
+    private static final String CONTAINER = "benchmark";
+    private static final String OBJECT = "object";
+    private static final String LARGE_OBJECT = "large-object";
+    private static final String ACCOUNT_PATH = "/v1/AUTH_test";
+
+    @Param({"false", "true"})
+    boolean virtualThreads;
+
+    @Param({"1048576"})
+    int objectSize;
+
+    @Param({"16"})
+    int segments;
+
+    private SwiftProxy proxy;
+    private Client client;
+    private WebTarget target;
+    private String authToken;
+
+    @Setup
+    public final void setup() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_ENDPOINT, "http://127.0.0.1:0");
+        properties.setProperty(Constants.PROPERTY_PROVIDER, "transient");
+        properties.setProperty(Constants.PROPERTY_IDENTITY, "test:tester");
+        properties.setProperty(Constants.PROPERTY_CREDENTIAL, "testing");
+        properties.setProperty(SwiftProxy.PROPERTY_VIRTUAL_THREADS, String.valueOf(virtualThreads));
+        properties.setProperty(SwiftProxy.PROPERTY_METRICS_JMX, "false");
+        proxy = SwiftProxy.Builder.builder().overrides(properties).build();
+        proxy.start();
+
+        client = ClientBuilder.newClient();
+        target = client.target(proxy.getEndpoint());
+        authToken = target.path("/auth/v1.0").request()
+                .header("X-Auth-User", "test:tester")
+                .header("X-Auth-Key", "testing")
+                .get().getHeaderString("X-Auth-Token");
+        check(container().request().header("X-Auth-Token", authToken).put(Entity.text("")));
+
+        Random random = new Random(0);
+        byte[] data = new byte[objectSize];
+        random.nextBytes(data);
+        check(container().path(OBJECT).request().header("X-Auth-Token", authToken)
+                .put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM)));
+
+        List<String> manifest = new ArrayList<>(segments);
+        byte[] segment = new byte[objectSize / segments];
+        for (int i = 0; i < segments; i++) {
+            random.nextBytes(segment);
+            String name = LARGE_OBJECT + "/" + i;
+            check(container().path(name).request().header("X-Auth-Token", authToken)
+                    .put(Entity.entity(segment, MediaType.APPLICATION_OCTET_STREAM)));
+            manifest.add(String.format("{\"path\": \"/%s/%s\", \"etag\": \"%s\", \"size_bytes\": %d}",
+                    CONTAINER, name, Hashing.md5().hashBytes(segment), segment.length));
+        }
+        check(container().path(LARGE_OBJECT).queryParam("multipart-manifest", "put").request()
+                .header("X-Auth-Token", authToken)
+                .put(Entity.entity("[" + Joiner.on(", ").join(manifest) + "]", MediaType.APPLICATION_JSON)));
+    }
+
+    @TearDown
+    public final void tearDown() {
+        client.close();
+        proxy.stop();
+    }
+
+    private WebTarget container() {
+        return target.path(ACCOUNT_PATH + "/" + CONTAINER);
+    }
+
+    private static void check(Response response) {
+        response.close();
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            throw new IllegalStateException("setup request failed: " + response.getStatus());
+        }
+    }
+
+    /** Per-thread buffer the response bodies are drained into. */
+    @State(Scope.Thread)
+    public static class Buffer {
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public final void setup() {
+            bytes = new byte[64 * 1024];
+        }
+    }
+
+    private long get(String object, String range, Buffer buffer) throws IOException {
+        Response response = container().path(object).request().header("X-Auth-Token", authToken)
+                .header("Range", range).get();
+        long total = 0;
+        try (InputStream in = response.readEntity(InputStream.class)) {
+            int n;
+            while ((n = in.read(buffer.bytes)) != -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public final long getObject(Buffer buffer) throws IOException {
+        return get(OBJECT, null, buffer);
+    }
+
+    @Benchmark
+    public final long getObjectRange(Buffer buffer) throws IOException {
+        return get(OBJECT, "bytes=1000-66535", buffer);
+    }
+
+    @Benchmark
+    public final long getLargeObject(Buffer buffer) throws IOException {
+        return get(LARGE_OBJECT, null, buffer);
+    }
+
+    @Benchmark
+    public final long getLargeObjectRange(Buffer buffer) throws IOException {
+        // spans a segment boundary
+        int middle = objectSize / 2;
+        return get(LARGE_OBJECT, "bytes=" + (middle - 32768) + "-" + (middle + 32767), buffer);
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.bouncestorage.swiftproxy.SwiftProxy;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.inject.Module;
+
+import org.jclouds.Constants;
+import org.jclouds.ContextBuilder;
+import org.jclouds.filesystem.reference.FilesystemConstants;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.Segment;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+
+/**
+ * Starts a {@link SwiftProxy} in this JVM over the {@code transient} or {@code filesystem} provider, preloads a
+ * container and drives a mix of Swift requests against it through the jclouds {@code openstack-swift} client. Reports
+ * throughput, latency percentiles per operation and the bytes allocated per request, which include the client as it
+ * runs in the same JVM.
+ */
+public final class LoadTest {
+    private static final String CONTAINER = "loadtest";
+
+    private final Workload workload;
+    private final ObjectApi objectApi;
+    private final SwiftApi api;
+    private final String region;
+    private final Map<Integer, byte[]> payloads = new HashMap<>();
+    private final int[] objectSizes;
+    private volatile boolean running;
+
+    private LoadTest(Workload workload, SwiftApi api) {
+        this.workload = workload;
+        this.api = api;
+        this.region = api.getConfiguredRegions().iterator().next();
+        this.objectApi = api.getObjectApi(region, CONTAINER);
+        this.objectSizes = new int[workload.objects];
+        Random random = new Random(workload.seed);
+        for (int size : workload.getObjectSizes()) {
+            byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            payloads.put(size, payload);
+        }
+    }
+
+    /**
+     * Main method.
+     * @param args {@code --properties FILE}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 || !args[0].equals("--properties")) {
+            System.err.println("Usage: loadtest --properties FILE");
+            System.exit(1);
+        }
+
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(Paths.get(args[1]))) {
+            properties.load(is);
+        }
+        properties.putAll(System.getProperties());
+        Workload workload = new Workload(properties);
+
+        String provider = properties.getProperty(Constants.PROPERTY_PROVIDER, "transient");
+        if (!provider.equals("transient") && !provider.equals("filesystem")) {
+            System.err.println("loadtest only runs against the transient and filesystem providers");
+            System.exit(1);
+        }
+        properties.setProperty(Constants.PROPERTY_PROVIDER, provider);
+        Path baseDir = null;
+        if (provider.equals("filesystem") && properties.getProperty(FilesystemConstants.PROPERTY_BASEDIR) == null) {
+            baseDir = Files.createTempDirectory("swiftproxy-loadtest");
+            properties.setProperty(FilesystemConstants.PROPERTY_BASEDIR, baseDir.toString());
+        }
+        String identity = properties.getProperty(Constants.PROPERTY_IDENTITY, "test:tester");
+        String credential = properties.getProperty(Constants.PROPERTY_CREDENTIAL, "testing");
+        properties.setProperty(Constants.PROPERTY_IDENTITY, identity);
+        properties.setProperty(Constants.PROPERTY_CREDENTIAL, credential);
+        properties.setProperty(SwiftProxy.PROPERTY_ENDPOINT, "http://127.0.0.1:0");
+
+        SwiftProxy proxy = SwiftProxy.Builder.builder()
+                .overrides(properties)
+                .build();
+        proxy.start();
+
+        Properties clientProperties = new Properties();
+        clientProperties.setProperty("jclouds.keystone.credential-type", "tempAuthCredentials");
+        clientProperties.setProperty(Constants.PROPERTY_MAX_CONNECTIONS_PER_CONTEXT,
+                String.valueOf(workload.concurrency * 2));
+        clientProperties.setProperty(Constants.PROPERTY_MAX_CONNECTIONS_PER_HOST,
+                String.valueOf(workload.concurrency * 2));
+        URI endpoint = proxy.getEndpoint();
+        try (SwiftApi api = ContextBuilder.newBuilder("openstack-swift")
+                .endpoint(endpoint + "/auth/v1.0")
+                .credentials(identity, credential)
+                .modules(ImmutableList.<Module>of(new SLF4JLoggingModule()))
+                .overrides(clientProperties)
+                .buildApi(SwiftApi.class)) {
+            System.out.format("provider=%s %s%n", provider, workload);
+            new LoadTest(workload, api).run(System.out);
+        } finally {
+            proxy.stop();
+            if (baseDir != null) {
+                MoreFiles.deleteRecursively(baseDir, RecursiveDeleteOption.ALLOW_INSECURE);
+            }
+        }
+        System.exit(0);
+    }
+
+    private void run(PrintStream out) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workload.concurrency);
+        try {
+            long start = System.nanoTime();
+            preload(executor);
+            out.format("preloaded %d objects and %d large objects in %.1f s%n", workload.objects,
+                    workload.largeObjects, (System.nanoTime() - start) / 1e9);
+
+            if (workload.warmupSeconds > 0) {
+                runWorkers(executor, workload.warmupSeconds);
+            }
+
+            long allocatedBefore = allocatedBytes();
+            start = System.nanoTime();
+            Map<Operation, Recorder> results = runWorkers(executor, workload.durationSeconds);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = allocatedBytes() - allocatedBefore;
+            report(out, results, seconds, allocated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void preload(ExecutorService executor) throws Exception {
+        api.getContainerApi(region).create(CONTAINER);
+        Random random = new Random(workload.seed);
+        for (int i = 0; i < objectSizes.length; i++) {
+            objectSizes[i] = workload.pickObjectSize(random);
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < objectSizes.length; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> objectApi.put(objectName(index), payload(objectSizes[index]))));
+        }
+        byte[] segment = new byte[workload.largeObjectSegmentSize];
+        random.nextBytes(segment);
+        String segmentETag = Hashing.md5().hashBytes(segment).toString();
+        for (int i = 0; i < workload.largeObjects; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+                for (int j = 0; j < workload.largeObjectSegments; j++) {
+                    String name = "segments/" + index + "/" + j;
+                    objectApi.put(name, Payloads.newByteArrayPayload(segment));
+                    segments.add(Segment.builder().path(CONTAINER + "/" + name).etag(segmentETag)
+                            .sizeBytes(segment.length).build());
+                }
+                return api.getStaticLargeObjectApi(region, CONTAINER).replaceManifest(largeObjectName(index),
+                        segments.build(), ImmutableMap.<String, String>of());
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private Map<Operation, Recorder> runWorkers(ExecutorService executor, int seconds) throws Exception {
+        running = true;
+        List<Worker> workers = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workload.concurrency; i++) {
+            Worker worker = new Worker(i);
+            workers.add(worker);
+            futures.add(executor.submit(worker));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running = false;
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        Map<Operation, Recorder> results = new EnumMap<>(Operation.class);
+        for (Worker worker : workers) {
+            worker.recorders.forEach((operation, recorder) ->
+                    results.computeIfAbsent(operation, o -> new Recorder()).merge(recorder));
+        }
+        return results;
+    }
+
+    private static void report(PrintStream out, Map<Operation, Recorder> results, double seconds,
+                               long allocated) {
+        out.format("%n%-12s %9s %7s %10s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "errors", "ops/s",
+                "MB/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Recorder total = new Recorder();
+        for (Map.Entry<Operation, Recorder> entry : results.entrySet()) {
+            line(out, entry.getKey().getName(), entry.getValue(), seconds);
+            total.merge(entry.getValue());
+        }
+        line(out, "total", total, seconds);
+        out.format("%nduration %.1f s, allocated %.1f KB per request in proxy and client%n", seconds,
+                total.getCount() == 0 ? 0.0 : allocated / 1024.0 / total.getCount());
+    }
+
+    private static void line(PrintStream out, String name, Recorder recorder, double seconds) {
+        out.format("%-12s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, recorder.getCount(),
+                recorder.getErrors(), recorder.getCount() / seconds, recorder.getBytes() / seconds / 1024 / 1024,
+                recorder.percentile(0.5), recorder.percentile(0.9), recorder.percentile(0.99),
+                recorder.percentile(0.999), recorder.percentile(1));
+    }
+
+    /** Bytes allocated so far by the live threads of this JVM; threads that have exited are not counted. */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static String objectName(int index) {
+        return "objects/" + index;
+    }
+
+    private static String largeObjectName(int index) {
+        return "large-objects/" + index;
+    }
+
+    private Payload payload(int size) {
+        return Payloads.newByteArrayPayload(payloads.get(size));
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final Random random;
+        private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+        private final Deque<String> uploaded = new ArrayDeque<>();
+        private final byte[] buffer = new byte[64 * 1024];
+        private long sequence;
+
+        Worker(int index) {
+            this.index = index;
+            this.random = new Random(workload.seed + index + 1);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Operation operation = workload.pickOperation(random);
+                if (operation == Operation.BULK_DELETE && uploaded.isEmpty()) {
+                    // nothing of ours to delete yet
+                    operation = Operation.PUT;
+                }
+                Recorder recorder = recorders.computeIfAbsent(operation, o -> new Recorder());
+                long start = System.nanoTime();
+                try {
+                    long bytes = execute(operation);
+                    recorder.record(System.nanoTime() - start, bytes);
+                } catch (Exception e) {
+                    recorder.error();
+                }
+            }
+        }
+
+        private long execute(Operation operation) throws IOException {
+            switch (operation) {
+            case PUT:
+                int size = workload.pickObjectSize(random);
+                String name = "uploads/" + index + "/" + sequence++;
+                objectApi.put(name, payload(size));
+                uploaded.add(CONTAINER + "/" + name);
+                return size;
+            case GET:
+                return drain(objectApi.get(objectName(random.nextInt(objectSizes.length))));
+            case SLO_GET:
+                return drain(objectApi.get(largeObjectName(random.nextInt(workload.largeObjects))));
+            case RANGE_GET:
+                int object = random.nextInt(objectSizes.length);
+                int length = Math.min(workload.rangeSize, objectSizes[object]);
+                int offset = random.nextInt(objectSizes[object] - length + 1);
+                return drain(objectApi.get(objectName(object), GetOptions.Builder.range(offset, offset + length - 1)));
+            case LIST:
+                ObjectList list = objectApi.list(ListContainerOptions.Builder.limit(workload.listLimit));
+                if (list.isEmpty()) {
+                    throw new IOException("empty listing");
+                }
+                return 0;
+            case BULK_DELETE:
+                List<String> paths = new ArrayList<>();
+                while (paths.size() < workload.bulkDeleteSize && !uploaded.isEmpty()) {
+                    paths.add(uploaded.poll());
+                }
+                api.getBulkApi(region).bulkDelete(paths);
+                return 0;
+            default:
+                throw new IllegalStateException(operation.toString());
+            }
+        }
+
+        private long drain(SwiftObject object) throws IOException {
+            if (object == null) {
+                throw new IOException("object not found");
+            }
+            long total = 0;
+            try (InputStream in = object.getPayload().openStream()) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    total += n;
+                }
+            }
+            return total;
+        }
+    }
+}
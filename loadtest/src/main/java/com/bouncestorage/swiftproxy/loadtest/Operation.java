@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.loadtest;
+
+/** The requests a load test mixes, named as in {@code loadtest.mix}. */
+enum Operation {
+    /** Upload a new object with a size drawn from {@code loadtest.object-sizes}. */
+    PUT("put"),
+    /** Read a whole preloaded object. */
+    GET("get"),
+    /** Read a whole static large object. */
+    SLO_GET("slo-get"),
+    /** Read {@code loadtest.range-size} bytes at a random offset of a preloaded object. */
+    RANGE_GET("range-get"),
+    /** List the first {@code loadtest.list-limit} objects of the container. */
+    LIST("list"),
+    /** Delete objects uploaded by earlier PUTs with one bulk delete. */
+    BULK_DELETE("bulk-delete");
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    static Operation fromName(String name) {
+        for (Operation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("unknown operation: " + name);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies, bytes and errors of one operation. Every latency is kept so percentiles are exact; each worker records
+ * into its own recorders, which are merged once the run is over.
+ */
+final class Recorder {
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+    private long bytes;
+    private boolean sorted;
+
+    void record(long nanos, long transferred) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        bytes += transferred;
+        sorted = false;
+    }
+
+    void error() {
+        errors++;
+    }
+
+    void merge(Recorder other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, count + other.count);
+        }
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        errors += other.errors;
+        bytes += other.bytes;
+        sorted = false;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    /** Latency at quantile {@code q} in milliseconds, nearest rank. */
+    double percentile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(latencies, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(q * count) - 1;
+        return latencies[Math.max(0, Math.min(rank, count - 1))] / 1e6;
+    }
+}
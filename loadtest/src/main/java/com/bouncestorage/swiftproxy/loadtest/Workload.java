@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import com.bouncestorage.swiftproxy.Utils;
+import com.google.common.base.Splitter;
+
+/** What a load test runs, read from {@code loadtest.*} properties. */
+final class Workload {
+    static final String PROPERTY_CONCURRENCY = "loadtest.concurrency";
+    static final String PROPERTY_WARMUP = "loadtest.warmup";
+    static final String PROPERTY_DURATION = "loadtest.duration";
+    static final String PROPERTY_SEED = "loadtest.seed";
+    static final String PROPERTY_OBJECTS = "loadtest.objects";
+    static final String PROPERTY_OBJECT_SIZES = "loadtest.object-sizes";
+    static final String PROPERTY_LARGE_OBJECTS = "loadtest.large-objects";
+    static final String PROPERTY_LARGE_OBJECT_SEGMENTS = "loadtest.large-object.segments";
+    static final String PROPERTY_LARGE_OBJECT_SEGMENT_SIZE = "loadtest.large-object.segment-size";
+    static final String PROPERTY_RANGE_SIZE = "loadtest.range-size";
+    static final String PROPERTY_LIST_LIMIT = "loadtest.list-limit";
+    static final String PROPERTY_BULK_DELETE_SIZE = "loadtest.bulk-delete-size";
+    static final String PROPERTY_MIX = "loadtest.mix";
+
+    private static final Splitter.MapSplitter WEIGHTS = Splitter.on(',').trimResults().omitEmptyStrings()
+            .withKeyValueSeparator(':');
+
+    final int concurrency;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final long seed;
+    final int objects;
+    final int largeObjects;
+    final int largeObjectSegments;
+    final int largeObjectSegmentSize;
+    final int rangeSize;
+    final int listLimit;
+    final int bulkDeleteSize;
+
+    private final Operation[] operations;
+    private final int[] operationWeights;
+    private final int[] sizes;
+    private final int[] sizeWeights;
+
+    Workload(Properties properties) {
+        concurrency = Utils.getIntProperty(properties, PROPERTY_CONCURRENCY, 16);
+        warmupSeconds = Utils.getIntProperty(properties, PROPERTY_WARMUP, 5);
+        durationSeconds = Utils.getIntProperty(properties, PROPERTY_DURATION, 30);
+        seed = Utils.getLongProperty(properties, PROPERTY_SEED, 1);
+        objects = Utils.getIntProperty(properties, PROPERTY_OBJECTS, 1000);
+        largeObjects = Utils.getIntProperty(properties, PROPERTY_LARGE_OBJECTS, 10);
+        largeObjectSegments = Utils.getIntProperty(properties, PROPERTY_LARGE_OBJECT_SEGMENTS, 16);
+        largeObjectSegmentSize = Utils.getIntProperty(properties, PROPERTY_LARGE_OBJECT_SEGMENT_SIZE, 1024 * 1024);
+        rangeSize = Utils.getIntProperty(properties, PROPERTY_RANGE_SIZE, 64 * 1024);
+        listLimit = Utils.getIntProperty(properties, PROPERTY_LIST_LIMIT, 1000);
+        bulkDeleteSize = Utils.getIntProperty(properties, PROPERTY_BULK_DELETE_SIZE, 100);
+        if (concurrency <= 0 || durationSeconds <= 0 || objects <= 0 || rangeSize <= 0) {
+            throw new IllegalArgumentException("concurrency, duration, objects and range size must be positive");
+        }
+
+        Map<String, String> mix = WEIGHTS.split(properties.getProperty(PROPERTY_MIX,
+                "put:30,get:40,slo-get:5,range-get:15,list:5,bulk-delete:5"));
+        operations = new Operation[mix.size()];
+        operationWeights = new int[mix.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : mix.entrySet()) {
+            operations[i] = Operation.fromName(entry.getKey());
+            operationWeights[i] = cumulate(operationWeights, i, entry.getValue());
+            i++;
+        }
+        if (largeObjects == 0 && Arrays.asList(operations).contains(Operation.SLO_GET)) {
+            throw new IllegalArgumentException("slo-get needs " + PROPERTY_LARGE_OBJECTS + " > 0");
+        }
+
+        Map<String, String> sizeMix = WEIGHTS.split(properties.getProperty(PROPERTY_OBJECT_SIZES,
+                "4096:70,65536:25,1048576:5"));
+        sizes = new int[sizeMix.size()];
+        sizeWeights = new int[sizeMix.size()];
+        i = 0;
+        for (Map.Entry<String, String> entry : sizeMix.entrySet()) {
+            sizes[i] = Integer.parseInt(entry.getKey());
+            sizeWeights[i] = cumulate(sizeWeights, i, entry.getValue());
+            i++;
+        }
+    }
+
+    private static int cumulate(int[] weights, int i, String weight) {
+        int w = Integer.parseInt(weight);
+        if (w < 0) {
+            throw new IllegalArgumentException("negative weight: " + weight);
+        }
+        return (i == 0 ? 0 : weights[i - 1]) + w;
+    }
+
+    private static int pick(int[] cumulativeWeights, Random random) {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        if (total == 0) {
+            throw new IllegalArgumentException("all weights are zero");
+        }
+        int r = random.nextInt(total);
+        int i = 0;
+        while (cumulativeWeights[i] <= r) {
+            i++;
+        }
+        return i;
+    }
+
+    Operation pickOperation(Random random) {
+        return operations[pick(operationWeights, random)];
+    }
+
+    int pickObjectSize(Random random) {
+        return sizes[pick(sizeWeights, random)];
+    }
+
+    /** The distinct object sizes, so payloads can be generated once up front. */
+    int[] getObjectSizes() {
+        return sizes.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("concurrency=%d warmup=%ds duration=%ds seed=%d objects=%d large-objects=%dx%dx%d",
+                concurrency, warmupSeconds, durationSeconds, seed, objects, largeObjects, largeObjectSegments,
+                largeObjectSegmentSize);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.glassfish.jersey.spi.ExtendedExceptionMapper;
+import org.jclouds.rest.AuthorizationException;
+
+/** The backend refused a request made with the account's credentials, which Swift answers with 403. */
+@Provider
+public final class AuthorizationExceptionMapper implements ExtendedExceptionMapper<AuthorizationException> {
+    @Override
+    public Response toResponse(AuthorizationException exception) {
+        return Response.status(Response.Status.FORBIDDEN).build();
+    }
+
+    @Override
+    public boolean isMappable(AuthorizationException e) {
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jclouds.blobstore.BlobStore;
+
+/**
+ * The backend calls made on behalf of one Swift request, counted and timed per {@link BlobStore} method. Calls are
+ * recorded by {@link RequestTrace#instrument}, possibly from several threads at once.
+ */
+final class BackendCalls {
+    private final ConcurrentMap<String, Call> calls = new ConcurrentHashMap<>();
+
+    static final class Call {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getNanos() {
+            return nanos.sum();
+        }
+    }
+
+    void record(String method, long nanos) {
+        Call call = calls.computeIfAbsent(method, k -> new Call());
+        call.nanos.add(nanos);
+        call.count.increment();
+    }
+
+    /** The calls made so far, by method name. */
+    Map<String, Call> getCalls() {
+        return new TreeMap<>(calls);
+    }
+
+    long getCount() {
+        return calls.values().stream().mapToLong(Call::getCount).sum();
+    }
+
+    long getNanos() {
+        return calls.values().stream().mapToLong(Call::getNanos).sum();
+    }
+
+    /** Summarize the calls made so far, e.g. {@code 2 calls, 4.2 ms; blobMetadata=1 (1.0 ms); getBlob=1 (3.2 ms)}. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        Map<String, Call> snapshot = getCalls();
+        long count = 0;
+        long nanos = 0;
+        for (Map.Entry<String, Call> entry : snapshot.entrySet()) {
+            long callCount = entry.getValue().getCount();
+            long callNanos = entry.getValue().getNanos();
+            sb.append("; ").append(entry.getKey()).append('=').append(callCount)
+                    .append(" (").append(millis(callNanos)).append(" ms)");
+            count += callCount;
+            nanos += callNanos;
+        }
+        return count + (count == 1 ? " call, " : " calls, ") + millis(nanos) + " ms" + sb;
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor for blocking backend calls that a single Swift request fans out, e.g. the segment HEADs of a manifest
+ * PUT or the segment DELETEs of a manifest DELETE. At most {@code threads + queueSize} tasks are admitted at once
+ * across the proxy; beyond that tasks run on the calling thread, which throttles the request that caused the load.
+ */
+public final class BackendExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BackendExecutor.class);
+    private static final int DEFAULT_THREADS = 32;
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final int DEFAULT_REQUEST_CONCURRENCY = 16;
+
+    private final ExecutorService executor;
+    private final Semaphore admission;
+    private final int requestConcurrency;
+    private final boolean virtualThreads;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    BackendExecutor(int threads, int queueSize, int requestConcurrency, boolean useVirtualThreads) {
+        this("backend", threads, queueSize, requestConcurrency, useVirtualThreads);
+    }
+
+    /** An executor whose threads are named after {@code name}, e.g. {@code swiftproxy-backend-3}. */
+    BackendExecutor(String name, int threads, int queueSize, int requestConcurrency, boolean useVirtualThreads) {
+        if (threads <= 0 || queueSize < 0 || requestConcurrency <= 0) {
+            throw new IllegalArgumentException(String.format("invalid backend executor settings: %d threads, " +
+                    "%d queue size, %d per request", threads, queueSize, requestConcurrency));
+        }
+        this.admission = new Semaphore(threads + queueSize);
+        this.requestConcurrency = requestConcurrency;
+
+        ExecutorService virtualExecutor = useVirtualThreads ? VirtualThreads.newExecutor("swiftproxy-" + name + "-") :
+                null;
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            virtualThreads = true;
+        } else {
+            if (useVirtualThreads) {
+                logger.warn("virtual threads are not supported by this JVM, using a pool of {} threads", threads);
+            }
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("swiftproxy-" + name + "-%d")
+                            .setDaemon(true)
+                            .build());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            virtualThreads = false;
+        }
+    }
+
+    static BackendExecutor fromProperties(Properties properties) {
+        return new BackendExecutor(
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_BACKEND_THREADS, DEFAULT_THREADS),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_BACKEND_QUEUE_SIZE, DEFAULT_QUEUE_SIZE),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_BACKEND_REQUEST_CONCURRENCY,
+                        DEFAULT_REQUEST_CONCURRENCY),
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_BACKEND_VIRTUAL_THREADS,
+                        Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_VIRTUAL_THREADS, false)));
+    }
+
+
+    /**
+     * Apply {@code action} to every item with at most the configured per-request concurrency and wait for all of
+     * them. Items are pulled from {@code items} only as tasks complete, so it may be a lazily computed stream. The
+     * first failure, of a task or of {@code items}, stops the remaining items from starting and is rethrown once the
+     * tasks already started have finished.
+     */
+    public <T> void forEach(Iterable<T> items, Consumer<? super T> action) {
+        forEach(items, requestConcurrency, action);
+    }
+
+    /** Like {@link #forEach(Iterable, Consumer)}, with at most {@code concurrency} items in flight. */
+    public <T> void forEach(Iterable<T> items, int concurrency, Consumer<? super T> action) {
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            Iterator<T> iterator = items.iterator();
+            while (true) {
+                T item;
+                try {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    item = iterator.next();
+                } catch (RuntimeException e) {
+                    // the tasks already started still own their items, so wait for them below
+                    failure.compareAndSet(null, e);
+                    break;
+                }
+                permits.acquire();
+                if (failure.get() != null) {
+                    permits.release();
+                    break;
+                }
+                futures.add(submit(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            action.accept(item);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        failed.increment();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+                if (futures.size() > concurrency * 4) {
+                    // failures are recorded above, so finished tasks need not be kept around
+                    futures.removeIf(Future::isDone);
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw propagate(e);
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+
+        Throwable t = failure.get();
+        if (t != null) {
+            throw propagate(t);
+        }
+    }
+
+    private Future<?> submit(Runnable task) {
+        submitted.increment();
+        FutureTask<?> future = new FutureTask<>(() -> {
+            inFlight.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }, null);
+        if (admission.tryAcquire()) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.run();
+                    } finally {
+                        admission.release();
+                    }
+                });
+                return future;
+            } catch (RejectedExecutionException e) {
+                admission.release();
+            }
+        }
+        callerRuns.increment();
+        future.run();
+        return future;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getRequestConcurrency() {
+        return requestConcurrency;
+    }
+
+    /** Number of tasks currently running. */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /** Number of tasks that ran on the calling thread because the executor was saturated. */
+    public long getCallerRunsCount() {
+        return callerRuns.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
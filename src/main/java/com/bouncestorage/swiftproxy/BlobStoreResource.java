@@ -16,21 +16,14 @@
 
 package com.bouncestorage.swiftproxy;
 
-import static com.google.common.base.Throwables.propagate;
-
-import java.io.ByteArrayOutputStream;
-import java.lang.annotation.Annotation;
-import java.util.Collection;
+import java.util.Iterator;
 
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.ext.MessageBodyWriter;
 
-import org.glassfish.jersey.message.MessageBodyWorkers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,8 +35,6 @@ public abstract class BlobStoreResource {
     protected Logger logger = LoggerFactory.getLogger(getClass());
     @Context
     protected Application application;
-    @Context
-    private MessageBodyWorkers workers;
 
     protected final BounceResourceConfig.AuthenticatedBlobStore getBlobStore(String authToken) {
         if (authToken == null) {
@@ -58,6 +49,14 @@ public abstract class BlobStoreResource {
         return blobStore;
     }
 
+    protected final BounceResourceConfig getConfig() {
+        return (BounceResourceConfig) application;
+    }
+
+    protected final BackendExecutor getBackendExecutor() {
+        return getConfig().getBackendExecutor();
+    }
+
     protected static Response notAuthorized() {
         return Response.status(Response.Status.UNAUTHORIZED).entity(UNAUTHORIZED_BODY).build();
     }
@@ -72,43 +71,16 @@ public abstract class BlobStoreResource {
         return Response.status(Response.Status.BAD_REQUEST).build();
     }
 
-    private void debugWrite(Object root, MediaType format) {
-
-        MessageBodyWriter messageBodyWriter =
-                workers.getMessageBodyWriter(root.getClass(), root.getClass(),
-                        new Annotation[]{}, format);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
-            // use the MBW to serialize myBean into baos
-            messageBodyWriter.writeTo(root,
-                    root.getClass(), root.getClass(), new Annotation[]{},
-                    format, new MultivaluedHashMap<String, Object>(),
-                    baos);
-        } catch (Throwable e) {
-            logger.error(String.format("could not serialize %s to format %s", root, format), e);
-            throw propagate(e);
-        }
-
-        logger.info("{}", baos);
-    }
-
-    protected final Response.ResponseBuilder output(Object root, Object value, MediaType
-            format) {
-        if (value instanceof  Collection) {
-            Collection entries = (Collection) value;
-            if (format == MediaType.TEXT_PLAIN_TYPE && entries.isEmpty()) {
-                return Response.noContent();
-            }
-            if (format == MediaType.APPLICATION_XML_TYPE) {
-                debugWrite(root, format);
-                return Response.ok(root, format);
-            }
-            if (format == MediaType.APPLICATION_JSON_TYPE) {
-                return Response.ok(entries, format);
-            }
+    /**
+     * Stream a listing to the client. {@code entries} is consumed while the response is written; a plain listing
+     * without entries is answered with 204.
+     */
+    protected static Response.ResponseBuilder output(String rootElement, String name, String entryElement,
+                                                     Iterator<?> entries, MediaType format) {
+        ListingOutput output = new ListingOutput(rootElement, name, entryElement, entries, format);
+        if (output.getMediaType() == MediaType.TEXT_PLAIN_TYPE && !entries.hasNext()) {
+            return Response.noContent();
         }
-
-        debugWrite(value, format);
-        return Response.ok(value, format);
+        return Response.ok(output, output.getMediaType());
     }
 }
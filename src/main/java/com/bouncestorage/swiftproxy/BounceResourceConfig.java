@@ -16,29 +16,29 @@
 
 package com.bouncestorage.swiftproxy;
 
-import static com.google.common.base.Throwables.propagate;
-
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import javax.ws.rs.core.MediaType;
 
 import com.bouncestorage.swiftproxy.v1.InfoResource;
+import com.bouncestorage.swiftproxy.v1.LargeObjectManifest;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.inject.Module;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.jclouds.Constants;
-import org.jclouds.ContextBuilder;
 import org.jclouds.blobstore.BlobStore;
-import org.jclouds.blobstore.BlobStoreContext;
-import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
+import org.jclouds.filesystem.reference.FilesystemConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,10 +50,26 @@ public final class BounceResourceConfig extends ResourceConfig {
             "plain", MediaType.TEXT_PLAIN_TYPE
     );
 
+    private static final long DEFAULT_SLO_CACHE_SEGMENTS = 100000;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final Properties properties;
     private URI endPoint;
     private BlobStoreLocator locator;
+    private final SegmentReadAhead segmentReadAhead;
+    private final BackendExecutor backendExecutor;
+    private final TransferExecutor transferExecutor;
+    private final MultipartUploader multipartUploader;
+    private final MetadataCache metadataCache;
+    private final Cache<String, LargeObjectManifest> sloManifests;
+    private final ContextPool contextPool;
+    private final SignedTokens signedTokens;
+    private final VirtualThreads.PinningMonitor pinningMonitor;
+    private final Path filesystemBaseDir;
+    private final LongAdder sendfileCount = new LongAdder();
+    private final SimulatedBackend simulatedBackend;
+    private final Metrics metrics = new Metrics();
+    private Map<String, Object> serverSettings = ImmutableMap.of();
     private Cache<String, String> tokensToIdentities = CacheBuilder.newBuilder()
             .expireAfterWrite(InfoResource.CONFIG.tempauth.token_life, TimeUnit.SECONDS)
             .build();
@@ -77,15 +93,111 @@ public final class BounceResourceConfig extends ResourceConfig {
         }
         this.properties = properties;
         this.locator = locator;
+        this.segmentReadAhead = SegmentReadAhead.fromProperties(properties);
+        this.backendExecutor = BackendExecutor.fromProperties(properties);
+        this.transferExecutor = TransferExecutor.fromProperties(properties);
+        this.multipartUploader = MultipartUploader.fromProperties(properties);
+        this.metadataCache = MetadataCache.fromProperties(properties);
+        // parsed manifests are keyed by the ETag of the manifest object, so they can be shared by all identities
+        this.sloManifests = CacheBuilder.newBuilder()
+                .maximumWeight(Utils.getLongProperty(properties, SwiftProxy.PROPERTY_SLO_CACHE_SEGMENTS,
+                        DEFAULT_SLO_CACHE_SEGMENTS))
+                .<String, LargeObjectManifest>weigher((eTag, manifest) -> Math.max(1, manifest.getSegmentCount()))
+                .recordStats()
+                .build();
+        this.contextPool = properties == null ? null : ContextPool.fromProperties(properties);
+        this.signedTokens = SignedTokens.fromProperties(properties);
+        this.simulatedBackend = SimulatedBackend.fromProperties(properties);
+        this.pinningMonitor = Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_VIRTUAL_THREADS, false) &&
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_VIRTUAL_THREADS_REPORT_PINNING, false) ?
+                VirtualThreads.PinningMonitor.start() : null;
+        // sendfile would bypass the bandwidth limit of a simulated backend
+        this.filesystemBaseDir = locator == null && simulatedBackend == null ? filesystemBaseDir(properties) : null;
+        if (contextPool != null && locator == null) {
+            contextPool.warm();
+        }
+        registerMetrics();
+        register(new RequestMetrics(metrics,
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_BACKEND_CALLS_HEADER, false),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_SLOW_REQUEST_THRESHOLD, 0)));
         packages(getClass().getPackage().getName());
     }
 
+    private void registerMetrics() {
+        registerCacheMetrics("metadata", metadataCache::getStats, metadataCache::size);
+        registerCacheMetrics("dlo", metadataCache::getDloStats, null);
+        registerCacheMetrics("slo", sloManifests::stats, sloManifests::size);
+        if (contextPool != null) {
+            registerCacheMetrics("context", contextPool::getStats, contextPool::size);
+            metrics.gauge("context_pool_open", "Backend contexts not closed yet, including evicted ones in use.",
+                    "", contextPool::getOpenCount);
+        }
+        metrics.gauge("backend_executor_in_flight", "Backend tasks that are running.", "",
+                backendExecutor::getInFlight);
+        metrics.counter("backend_executor_tasks_total", "Backend tasks submitted.", "",
+                backendExecutor::getSubmittedCount);
+        metrics.counter("backend_executor_caller_runs_total", "Backend tasks run on the calling thread.", "",
+                backendExecutor::getCallerRunsCount);
+        metrics.counter("backend_executor_failures_total", "Backend tasks that failed.", "",
+                backendExecutor::getFailedCount);
+        metrics.gauge("transfer_executor_active", "Object transfers that are running.", "",
+                transferExecutor::getActive);
+        metrics.gauge("transfer_executor_suspended", "Object transfers that are running or waiting.", "",
+                transferExecutor::getSuspended);
+        metrics.counter("transfer_executor_rejected_total", "Object transfers rejected with 503.", "",
+                transferExecutor::getRejectedCount);
+        metrics.counter("transfer_executor_timed_out_total", "Object transfers that timed out while waiting.", "",
+                transferExecutor::getTimedOutCount);
+        metrics.counter("multipart_uploads_total", "Object uploads split into parts.", "",
+                multipartUploader::getUploadCount);
+        metrics.counter("multipart_upload_parts_total", "Parts uploaded by multipart uploads.", "",
+                multipartUploader::getPartCount);
+        metrics.counter("multipart_upload_aborts_total", "Multipart uploads aborted after a failure.", "",
+                multipartUploader::getAbortCount);
+        metrics.gauge("multipart_upload_buffers_in_use", "Part buffers holding a part being uploaded.", "",
+                multipartUploader::getBuffersInUse);
+        metrics.counter("multipart_upload_buffer_timeouts_total",
+                "Uploads answered with 503 because no part buffer was freed in time.", "",
+                multipartUploader::getBufferTimeoutCount);
+        metrics.counter("sendfile_responses_total", "Object bodies sent from their files with sendfile.", "",
+                sendfileCount::sum);
+        if (pinningMonitor != null) {
+            metrics.counter("virtual_threads_pinned_total", "Times a virtual thread blocked while pinned.", "",
+                    pinningMonitor::getPinnedCount);
+        }
+    }
+
+    private void registerCacheMetrics(String cache, Supplier<CacheStats> stats, Supplier<Long> size) {
+        String labels = Metrics.labels("cache", cache);
+        metrics.counter("cache_hits_total", "Cache lookups that found an entry.", labels,
+                () -> stats.get().hitCount());
+        metrics.counter("cache_misses_total", "Cache lookups that did not find an entry.", labels,
+                () -> stats.get().missCount());
+        metrics.counter("cache_evictions_total", "Cache entries evicted for size or age.", labels,
+                () -> stats.get().evictionCount());
+        if (size != null) {
+            metrics.gauge("cache_entries", "Entries in the cache.", labels, size);
+        }
+    }
+
+    private static Path filesystemBaseDir(Properties properties) {
+        String baseDir = properties.getProperty(FilesystemConstants.PROPERTY_BASEDIR);
+        if (!"filesystem".equals(properties.getProperty(Constants.PROPERTY_PROVIDER)) || baseDir == null ||
+                !Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_SENDFILE, true)) {
+            return null;
+        }
+        return Paths.get(baseDir).toAbsolutePath().normalize();
+    }
+
     public String authenticate(String identity, String credential) {
         AuthenticatedBlobStore blobStore = tryAuthenticate(identity, credential);
         if (blobStore != null) {
+            identitiesToBlobStore.put(identity, blobStore);
+            if (signedTokens != null) {
+                return signedTokens.sign(identity, credential);
+            }
             String token = "AUTH_tk" + RandomStringUtils.randomAlphanumeric(32);
             tokensToIdentities.put(token, identity);
-            identitiesToBlobStore.put(identity, blobStore);
             return token;
         }
 
@@ -97,7 +209,8 @@ public final class BounceResourceConfig extends ResourceConfig {
             Map.Entry<String, BlobStore> entry = locator.locateBlobStore(identity, null, null);
             if (entry != null && entry.getKey().equals(credential)) {
                 logger.debug("blob store for {} found", identity);
-                return (container, key) -> locator.locateBlobStore(identity, container, key).getValue();
+                return (container, key) -> decorate(identity,
+                        locator.locateBlobStore(identity, container, key).getValue());
             } else {
                 logger.debug("blob store for {} not found", identity);
             }
@@ -114,31 +227,143 @@ public final class BounceResourceConfig extends ResourceConfig {
                 }
             }
 
-            try {
-                BlobStoreContext context = ContextBuilder
-                        .newBuilder(provider)
-                        .overrides(properties)
-                        .credentials(identity, credential)
-                        .modules(ImmutableSet.<Module>of(new SLF4JLoggingModule()))
-                        .build(BlobStoreContext.class);
-                return (container, key) -> context.getBlobStore();
-            } catch (Throwable e) {
-                throw propagate(e);
-            }
+            // the handle rebuilds an evicted context instead of using it after close
+            ContextPool.Handle context = contextPool.handle(identity, credential);
+            return (container, key) -> decorate(identity, context.get().getBlobStore());
         }
 
         return null;
     }
 
+    /**
+     * Wrap a backend store: simulated latency innermost, so it is measured as backend time, then metrics, the
+     * trace of the current request and the cache, so that cache hits are not counted as backend calls.
+     */
+    private BlobStore decorate(String identity, BlobStore blobStore) {
+        if (simulatedBackend != null) {
+            blobStore = simulatedBackend.decorate(blobStore);
+        }
+        blobStore = metrics.instrument(blobStore);
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            blobStore = trace.instrument(blobStore);
+        }
+        return metadataCache.decorate(identity, blobStore);
+    }
+
     public AuthenticatedBlobStore getBlobStore(String authToken) {
-        String identity = tokensToIdentities.getIfPresent(authToken);
-        return identitiesToBlobStore.getIfPresent(identity);
+        long start = System.nanoTime();
+        try {
+            return lookupBlobStore(authToken);
+        } finally {
+            RequestTrace trace = RequestTrace.current();
+            if (trace != null) {
+                trace.recordAuth(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private AuthenticatedBlobStore lookupBlobStore(String authToken) {
+        if (signedTokens == null) {
+            String identity = tokensToIdentities.getIfPresent(authToken);
+            return identity == null ? null : identitiesToBlobStore.getIfPresent(identity);
+        }
+
+        SignedTokens.Claims claims = signedTokens.verify(authToken);
+        if (claims == null) {
+            return null;
+        }
+        AuthenticatedBlobStore blobStore = identitiesToBlobStore.getIfPresent(claims.identity);
+        if (blobStore == null) {
+            // the token was issued by another node, or this node has dropped the identity since
+            String credential = claims.getCredential();
+            if (credential == null) {
+                return null;
+            }
+            blobStore = tryAuthenticate(claims.identity, credential);
+            if (blobStore != null) {
+                identitiesToBlobStore.put(claims.identity, blobStore);
+            }
+        }
+        return blobStore;
+    }
+
+    public SegmentReadAhead getSegmentReadAhead() {
+        return segmentReadAhead;
+    }
+
+    public BackendExecutor getBackendExecutor() {
+        return backendExecutor;
+    }
+
+    public TransferExecutor getTransferExecutor() {
+        return transferExecutor;
+    }
+
+    public MultipartUploader getMultipartUploader() {
+        return multipartUploader;
+    }
+
+    public Cache<String, LargeObjectManifest> getSloManifestCache() {
+        return sloManifests;
+    }
+
+    /** Number of times a virtual thread blocked while pinned, or -1 if pinning is not recorded. */
+    public long getPinnedThreadCount() {
+        return pinningMonitor == null ? -1 : pinningMonitor.getPinnedCount();
+    }
+
+    /**
+     * The directory holding the containers of the {@code filesystem} provider, so that objects can be sent from
+     * their files directly, or null if the backend is anything else or sendfile is disabled.
+     */
+    public Path getFilesystemBaseDir() {
+        return filesystemBaseDir;
+    }
+
+    /** Number of object bodies sent with sendfile. */
+    public LongAdder getSendfileCount() {
+        return sendfileCount;
+    }
+
+    public ContextPool getContextPool() {
+        return contextPool;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    void shutdown() {
+        segmentReadAhead.shutdown();
+        backendExecutor.shutdown();
+        multipartUploader.shutdown();
+        transferExecutor.shutdown();
+        if (pinningMonitor != null) {
+            pinningMonitor.close();
+        }
+        if (contextPool != null) {
+            contextPool.shutdown();
+        }
     }
 
     public static MediaType getMediaType(String format) {
         return swiftFormatToMediaType.get(format);
     }
 
+    /** Effective HTTP server settings, as reported on {@code /info}. */
+    public Map<String, Object> getServerSettings() {
+        return serverSettings;
+    }
+
+    void setServerSettings(Map<String, Object> settings) {
+        serverSettings = ImmutableMap.copyOf(settings);
+    }
+
     public void setEndPoint(URI endPoint) {
         this.endPoint = endPoint;
     }
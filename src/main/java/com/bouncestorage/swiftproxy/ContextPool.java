@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bouncestorage.swiftproxy.v1.InfoResource;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Module;
+
+import org.jclouds.Constants;
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of jclouds {@link BlobStoreContext}s keyed by provider, identity and a fingerprint of the credential, so that
+ * authenticating again reuses the Guice injector, HTTP client and threads of the existing context instead of
+ * building new ones. Concurrent authentications of the same identity wait for a single build. Contexts are evicted
+ * after being idle for the configured time or when the pool is full, and closed once the requests using them, which
+ * may still be transferring data, have finished. Contexts of local providers hold the objects themselves, for
+ * {@code transient}, or are cheap to keep, so they are never evicted.
+ *
+ * <p>An authentication resolves its context once, with {@link #handle}, and its requests reuse it until it is
+ * evicted.
+ */
+public final class ContextPool {
+    private static final Logger logger = LoggerFactory.getLogger(ContextPool.class);
+    private static final long DEFAULT_SIZE = 100;
+    private static final Set<String> LOCAL_PROVIDERS = ImmutableSet.of("transient", "filesystem");
+
+    private final Properties properties;
+    private final String provider;
+    private final Cache<Key, PooledContext> contexts;
+    private final AtomicInteger open = new AtomicInteger();
+    /** Handles look their context up in the pool at most this often, so that its idle time is reset. */
+    private final long touchIntervalNanos;
+
+    ContextPool(Properties properties, long size, long idleSeconds) {
+        this(properties, size, idleSeconds,
+                !LOCAL_PROVIDERS.contains(properties.getProperty(Constants.PROPERTY_PROVIDER)));
+    }
+
+    ContextPool(Properties properties, long size, long idleSeconds, boolean evict) {
+        if (size <= 0 || idleSeconds <= 0) {
+            throw new IllegalArgumentException(String.format("invalid context pool settings: %d contexts, " +
+                    "%d seconds", size, idleSeconds));
+        }
+        this.properties = requireNonNull(properties);
+        this.provider = properties.getProperty(Constants.PROPERTY_PROVIDER);
+        this.touchIntervalNanos = TimeUnit.SECONDS.toNanos(idleSeconds) / 2;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (evict) {
+            builder.maximumSize(size)
+                    .expireAfterAccess(idleSeconds, TimeUnit.SECONDS);
+        }
+        this.contexts = builder
+                .removalListener(ContextPool::close)
+                .recordStats()
+                .build();
+    }
+
+    static ContextPool fromProperties(Properties properties) {
+        return new ContextPool(properties,
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_CONTEXT_POOL_SIZE, DEFAULT_SIZE),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_CONTEXT_POOL_IDLE_TIMEOUT,
+                        InfoResource.CONFIG.tempauth.token_life));
+    }
+
+    /**
+     * Return the pooled context of {@code identity}, building it on first use. If called for a request, the context
+     * is not closed before the request has finished, even if it is evicted meanwhile.
+     */
+    public BlobStoreContext get(String identity, String credential) {
+        return handle(identity, credential).get();
+    }
+
+    /** Resolve the context of {@code identity} once, for all the requests of an authentication. */
+    public Handle handle(String identity, String credential) {
+        Handle handle = new Handle(identity, credential);
+        handle.resolve();
+        return handle;
+    }
+
+    /** Build the context of the identity configured with {@code jclouds.identity}, if any, ahead of its first use. */
+    void warm() {
+        String identity = properties.getProperty(Constants.PROPERTY_IDENTITY);
+        String credential = properties.getProperty(Constants.PROPERTY_CREDENTIAL);
+        if (provider == null || identity == null || credential == null) {
+            return;
+        }
+        try {
+            get(identity, credential);
+        } catch (RuntimeException e) {
+            logger.warn("could not build blob store context for {}", identity, e);
+        }
+    }
+
+    private BlobStoreContext build(String identity, String credential) {
+        long start = System.nanoTime();
+        BlobStoreContext context = ContextBuilder
+                .newBuilder(provider)
+                .overrides(properties)
+                .credentials(identity, credential)
+                .modules(ImmutableSet.<Module>of(new SLF4JLoggingModule(), new TransIdHttpModule()))
+                .build(BlobStoreContext.class);
+        logger.info("built {} blob store context for {} in {} ms", provider, identity,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        open.incrementAndGet();
+        return context;
+    }
+
+    private static void close(RemovalNotification<Key, PooledContext> notification) {
+        logger.debug("evicting blob store context for {}: {}", notification.getKey().identity,
+                notification.getCause());
+        notification.getValue().evicted = true;
+        notification.getValue().release();
+    }
+
+    /**
+     * The context of one identity, resolved from the pool once and reused by every request of an authentication,
+     * without hashing the credential and looking the context up again, until the pool evicts it.
+     */
+    public final class Handle {
+        private final Key key;
+        private final String identity;
+        private final String credential;
+        private volatile PooledContext pooled;
+        private volatile long touched;
+
+        private Handle(String identity, String credential) {
+            this.key = new Key(requireNonNull(provider, Constants.PROPERTY_PROVIDER), identity, credential);
+            this.identity = identity;
+            this.credential = credential;
+        }
+
+        /**
+         * Return the context. If called for a request, the context is not closed before the request has finished,
+         * even if it is evicted meanwhile.
+         */
+        public BlobStoreContext get() {
+            RequestTrace trace = RequestTrace.current();
+            while (true) {
+                PooledContext current = pooled;
+                if (current.evicted) {
+                    current = resolve();
+                } else if (System.nanoTime() - touched > touchIntervalNanos) {
+                    // reset the idle time of the context in the pool
+                    touched = System.nanoTime();
+                    contexts.getIfPresent(key);
+                }
+                if (trace == null) {
+                    return current.context;
+                }
+                if (current.retain()) {
+                    trace.hold(current::release);
+                    return current.context;
+                }
+                // evicted and closed since it was resolved, build it again
+            }
+        }
+
+        private PooledContext resolve() {
+            try {
+                pooled = contexts.get(key, () -> new PooledContext(identity, build(identity, credential)));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                throw propagate(e.getCause());
+            }
+            touched = System.nanoTime();
+            return pooled;
+        }
+    }
+
+    /** Number of builds, build failures and total build time are reported as loads. */
+    public CacheStats getStats() {
+        return contexts.stats();
+    }
+
+    public long size() {
+        return contexts.size();
+    }
+
+    /** Number of contexts not closed yet, including evicted ones still used by requests. */
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    void shutdown() {
+        contexts.invalidateAll();
+        contexts.cleanUp();
+    }
+
+    /** A context and its references: one of the pool while it is cached and one per request using it. */
+    private final class PooledContext {
+        private final String identity;
+        private final BlobStoreContext context;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile boolean evicted;
+
+        PooledContext(String identity, BlobStoreContext context) {
+            this.identity = identity;
+            this.context = context;
+        }
+
+        /** Take a reference, unless the context was already closed. */
+        boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() != 0) {
+                return;
+            }
+            logger.debug("closing blob store context for {}", identity);
+            open.decrementAndGet();
+            try {
+                context.close();
+            } catch (RuntimeException e) {
+                logger.warn("error closing blob store context", e);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String provider;
+        private final String identity;
+        private final String fingerprint;
+
+        Key(String provider, String identity, String credential) {
+            this.provider = provider;
+            this.identity = requireNonNull(identity);
+            // the pool outlives tokens, so keep a digest of the credential rather than the credential itself
+            this.fingerprint = Hashing.sha256().hashString(requireNonNull(credential), StandardCharsets.UTF_8)
+                    .toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return provider.equals(other.provider) && identity.equals(other.identity) &&
+                    fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(provider, identity, fingerprint);
+        }
+    }
+}
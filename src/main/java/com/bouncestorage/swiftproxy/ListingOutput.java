@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes an account or container listing as entries are pulled from {@code entries}, so a listing is never held in
+ * memory as a whole. Supports the json, xml and plain formats of the Swift API.
+ */
+public final class ListingOutput implements StreamingOutput {
+    // same annotation handling as the Jersey JSON provider, so the @Xml annotations of entries are honoured
+    private static final ObjectMapper MAPPER = new ObjectMapper().setAnnotationIntrospector(
+            AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                    new JaxbAnnotationIntrospector(TypeFactory.defaultInstance())));
+    private static final ObjectWriter ENTRY_WRITER = MAPPER.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final TypeReference<Map<String, Object>> FIELDS_TYPE =
+            new TypeReference<Map<String, Object>>() { };
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String rootElement;
+    private final String name;
+    private final String entryElement;
+    private final Iterator<?> entries;
+    private final MediaType format;
+
+    /**
+     * @param rootElement XML element wrapping the listing, e.g. {@code container}
+     * @param name value of the {@code name} attribute of the root element
+     * @param entryElement XML element of each entry, e.g. {@code object}
+     */
+    public ListingOutput(String rootElement, String name, String entryElement, Iterator<?> entries,
+                         MediaType format) {
+        this.rootElement = requireNonNull(rootElement);
+        this.name = requireNonNull(name);
+        this.entryElement = requireNonNull(entryElement);
+        this.entries = requireNonNull(entries);
+        if (isType(format, MediaType.APPLICATION_JSON_TYPE)) {
+            this.format = MediaType.APPLICATION_JSON_TYPE;
+        } else if (isType(format, MediaType.APPLICATION_XML_TYPE)) {
+            this.format = MediaType.APPLICATION_XML_TYPE;
+        } else {
+            this.format = MediaType.TEXT_PLAIN_TYPE;
+        }
+    }
+
+    private static boolean isType(MediaType format, MediaType type) {
+        return format != null && type.getType().equalsIgnoreCase(format.getType()) &&
+                type.getSubtype().equalsIgnoreCase(format.getSubtype());
+    }
+
+    /** Content type of the response body. */
+    public MediaType getMediaType() {
+        return format;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        ByteArrayOutputStream debug = null;
+        OutputStream out = output;
+        if (logger.isDebugEnabled()) {
+            debug = new ByteArrayOutputStream();
+            out = new TeeOutputStream(output, debug);
+        }
+
+        if (format == MediaType.APPLICATION_JSON_TYPE) {
+            writeJson(out);
+        } else if (format == MediaType.APPLICATION_XML_TYPE) {
+            try {
+                writeXml(out);
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        } else {
+            while (entries.hasNext()) {
+                out.write(entries.next().toString().getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+        }
+        out.flush();
+
+        if (debug != null) {
+            logger.debug("{}", debug.toString("UTF-8"));
+        }
+    }
+
+    private void writeJson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            while (entries.hasNext()) {
+                ENTRY_WRITER.writeValue(generator, entries.next());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeXml(OutputStream out) throws XMLStreamException {
+        XMLStreamWriter xml = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        xml.writeStartElement(rootElement);
+        xml.writeAttribute("name", name);
+        while (entries.hasNext()) {
+            // go through the JSON representation so both formats agree on names and date formats
+            Map<String, Object> fields = MAPPER.convertValue(entries.next(), FIELDS_TYPE);
+            xml.writeStartElement(entryElement);
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                if (field.getValue() != null) {
+                    xml.writeStartElement(field.getKey());
+                    xml.writeCharacters(field.getValue().toString());
+                    xml.writeEndElement();
+                }
+            }
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+        xml.writeEndDocument();
+        xml.close();
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.CreateContainerOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.blobstore.util.ForwardingBlobStore;
+import org.jclouds.domain.Location;
+
+/**
+ * Size and TTL bounded cache of {@link BlobStore#containerExists} and {@link BlobStore#blobMetadata} results, keyed
+ * by identity, container and object. It is plugged in by decorating the backend {@link BlobStore} of an identity;
+ * writes through the decorated store invalidate the affected entries, including entries being loaded at the time,
+ * which are then not cached. Changes made to the backend behind the proxy's back are visible once the TTL expires;
+ * write paths that must not act on a stale entry use {@link #getFreshBlobMetadata}.
+ *
+ * <p>The resolved segment lists of dynamic large objects are cached separately, keyed by identity, container and
+ * segment prefix, and are dropped when a write through the proxy touches an object under the prefix.
+ *
+ * <p>Both caches are off unless given a size: behind a load balancer, other proxies write to the same backend, and
+ * a cached large object would be served from its old manifest until the TTL expires.
+ */
+public final class MetadataCache {
+    private static final long DEFAULT_SIZE = 0;
+    private static final long DEFAULT_TTL = 5;
+    private static final long DEFAULT_DLO_SIZE = 0;
+    private static final long DEFAULT_DLO_TTL = 10;
+    private static final CacheStats EMPTY_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private final Cache<Key, Object> cache;
+    private final Cache<Key, Object> dloSegments;
+    private final boolean negative;
+
+    MetadataCache(long size, long ttlSeconds, boolean negative) {
+        this(size, ttlSeconds, negative, 0, 0);
+    }
+
+    MetadataCache(long size, long ttlSeconds, boolean negative, long dloSize, long dloTtlSeconds) {
+        if (size < 0 || ttlSeconds < 0 || dloSize < 0 || dloTtlSeconds < 0) {
+            throw new IllegalArgumentException(String.format("invalid metadata cache settings: %d entries, " +
+                    "%d seconds, %d DLO entries, %d DLO seconds", size, ttlSeconds, dloSize, dloTtlSeconds));
+        }
+        this.negative = negative;
+        this.cache = newCache(size, ttlSeconds);
+        this.dloSegments = newCache(dloSize, dloTtlSeconds);
+    }
+
+    private static Cache<Key, Object> newCache(long size, long ttlSeconds) {
+        if (size == 0 || ttlSeconds == 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    static MetadataCache fromProperties(Properties properties) {
+        return new MetadataCache(
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_METADATA_CACHE_SIZE, DEFAULT_SIZE),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_METADATA_CACHE_TTL, DEFAULT_TTL),
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_METADATA_CACHE_NEGATIVE, false),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_DLO_CACHE_SIZE, DEFAULT_DLO_SIZE),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_DLO_CACHE_TTL, DEFAULT_DLO_TTL));
+    }
+
+    /** Return {@code blobStore} with metadata lookups cached for {@code identity}. */
+    public BlobStore decorate(String identity, BlobStore blobStore) {
+        if (cache == null && dloSegments == null) {
+            return blobStore;
+        }
+        return new CachingBlobStore(requireNonNull(identity), blobStore);
+    }
+
+    /**
+     * Return the cached segments of the dynamic large object with segments under {@code container/prefix}, or
+     * resolve them with {@code loader}. {@code blobStore} must have been returned by {@link #decorate}, otherwise
+     * nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDloSegments(BlobStore blobStore, String container, String prefix, Supplier<T> loader) {
+        if (dloSegments == null || !(blobStore instanceof CachingBlobStore) ||
+                ((CachingBlobStore) blobStore).owner() != this) {
+            return loader.get();
+        }
+        Key key = new Key(((CachingBlobStore) blobStore).identity, container, requireNonNull(prefix));
+        T segments = (T) getIfLoaded(dloSegments, key);
+        if (segments == null) {
+            segments = load(dloSegments, key, () -> requireNonNull(loader.get()), s -> s);
+        }
+        return segments;
+    }
+
+    /**
+     * Return the cached metadata of an object without going to the backend, or null when it is not cached.
+     * {@code blobStore} must have been returned by {@link #decorate}.
+     */
+    @SuppressWarnings("unchecked")
+    public BlobMetadata getCachedBlobMetadata(BlobStore blobStore, String container, String name) {
+        if (cache == null || !(blobStore instanceof CachingBlobStore) ||
+                ((CachingBlobStore) blobStore).owner() != this) {
+            return null;
+        }
+        Optional<BlobMetadata> meta = (Optional<BlobMetadata>) getIfLoaded(cache,
+                new Key(((CachingBlobStore) blobStore).identity, container, name));
+        return meta == null ? null : meta.orElse(null);
+    }
+
+    /**
+     * Return the metadata of an object as the backend has it, ignoring any cached entry, and cache the result. Write
+     * paths use this, so that e.g. a DELETE is not answered with 404 from a stale negative entry.
+     */
+    public BlobMetadata getFreshBlobMetadata(BlobStore blobStore, String container, String name) {
+        if (!(blobStore instanceof CachingBlobStore) || ((CachingBlobStore) blobStore).owner() != this) {
+            return blobStore.blobMetadata(container, name);
+        }
+        return ((CachingBlobStore) blobStore).loadBlobMetadata(container, name);
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public CacheStats getStats() {
+        return cache == null ? EMPTY_STATS : cache.stats();
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    public CacheStats getDloStats() {
+        return dloSegments == null ? EMPTY_STATS : dloSegments.stats();
+    }
+
+    private static Object getIfLoaded(Cache<Key, Object> cache, Key key) {
+        Object value = cache.getIfPresent(key);
+        return value instanceof Loading ? null : value;
+    }
+
+    /**
+     * Load a value with {@code loader} and cache what {@code toEntry} makes of it, or drop the entry if that is null.
+     * The key holds a {@link Loading} marker, or the entry being refreshed, meanwhile; an invalidation removes it, and
+     * the loaded value is then not cached, as it may predate the write that invalidated the key.
+     */
+    private static <T> T load(Cache<Key, Object> cache, Key key, Supplier<T> loader, Function<T, Object> toEntry) {
+        if (cache == null) {
+            return loader.get();
+        }
+        ConcurrentMap<Key, Object> map = cache.asMap();
+        Object marker = new Loading();
+        Object expected = map.putIfAbsent(key, marker);
+        if (expected == null) {
+            expected = marker;
+        }
+        boolean cached = false;
+        try {
+            T value = loader.get();
+            Object entry = toEntry.apply(value);
+            cached = entry != null && map.replace(key, expected, entry);
+            return value;
+        } finally {
+            if (!cached) {
+                map.remove(key, expected);
+            }
+        }
+    }
+
+    /** Placeholder of an entry being loaded. */
+    private static final class Loading {
+    }
+
+    private static final class Key {
+        private final String identity;
+        private final String container;
+        private final String object;
+
+        Key(String identity, String container, String object) {
+            this.identity = identity;
+            this.container = requireNonNull(container);
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return identity.equals(that.identity) && container.equals(that.container) &&
+                    Objects.equals(object, that.object);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identity, container, object);
+        }
+    }
+
+    private final class CachingBlobStore extends ForwardingBlobStore {
+        private final String identity;
+
+        CachingBlobStore(String identity, BlobStore blobStore) {
+            super(blobStore);
+            this.identity = identity;
+        }
+
+        private MetadataCache owner() {
+            return MetadataCache.this;
+        }
+
+        private void invalidate(String container, String object) {
+            if (cache != null) {
+                cache.invalidate(new Key(identity, container, object));
+            }
+            if (dloSegments != null && object != null && dloSegments.size() > 0) {
+                dloSegments.asMap().keySet().removeIf(k -> k.identity.equals(identity) &&
+                        k.container.equals(container) && object.startsWith(k.object));
+            }
+        }
+
+        private void invalidateContainer(String container) {
+            Stream.of(cache, dloSegments).filter(Objects::nonNull).forEach(c -> c.asMap().keySet().removeIf(
+                    k -> k.identity.equals(identity) && k.container.equals(container)));
+        }
+
+        private Object metadataEntry(BlobMetadata meta) {
+            return meta != null || negative ? Optional.ofNullable(meta) : null;
+        }
+
+        @Override
+        public boolean containerExists(String container) {
+            if (cache == null) {
+                return super.containerExists(container);
+            }
+            Key key = new Key(identity, container, null);
+            Boolean exists = (Boolean) getIfLoaded(cache, key);
+            if (exists == null) {
+                exists = load(cache, key, () -> super.containerExists(container),
+                        e -> e || negative ? e : null);
+            }
+            return exists;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public BlobMetadata blobMetadata(String container, String name) {
+            if (cache == null) {
+                return super.blobMetadata(container, name);
+            }
+            Optional<BlobMetadata> meta = (Optional<BlobMetadata>) getIfLoaded(cache,
+                    new Key(identity, container, name));
+            if (meta != null) {
+                return meta.orElse(null);
+            }
+            return loadBlobMetadata(container, name);
+        }
+
+        private BlobMetadata loadBlobMetadata(String container, String name) {
+            return load(cache, new Key(identity, container, name), () -> super.blobMetadata(container, name),
+                    this::metadataEntry);
+        }
+
+        @Override
+        public Blob getBlob(String container, String name) {
+            return load(cache, new Key(identity, container, name), () -> super.getBlob(container, name),
+                    blob -> metadataEntry(blob == null ? null : blob.getMetadata()));
+        }
+
+        @Override
+        public Blob getBlob(String container, String name, GetOptions options) {
+            if (GetOptions.NONE.equals(options)) {
+                return getBlob(container, name);
+            }
+            // metadata of a partial read describes the range, not the object
+            return super.getBlob(container, name, options);
+        }
+
+        @Override
+        public boolean createContainerInLocation(Location location, String container) {
+            try {
+                return super.createContainerInLocation(location, container);
+            } finally {
+                invalidate(container, null);
+            }
+        }
+
+        @Override
+        public boolean createContainerInLocation(Location location, String container,
+                                                 CreateContainerOptions options) {
+            try {
+                return super.createContainerInLocation(location, container, options);
+            } finally {
+                invalidate(container, null);
+            }
+        }
+
+        @Override
+        public void clearContainer(String container) {
+            try {
+                super.clearContainer(container);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public void clearContainer(String container, ListContainerOptions options) {
+            try {
+                super.clearContainer(container, options);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public void deleteContainer(String container) {
+            try {
+                super.deleteContainer(container);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public boolean deleteContainerIfEmpty(String container) {
+            try {
+                return super.deleteContainerIfEmpty(container);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public void createDirectory(String container, String directory) {
+            try {
+                super.createDirectory(container, directory);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public void deleteDirectory(String container, String directory) {
+            try {
+                super.deleteDirectory(container, directory);
+            } finally {
+                invalidateContainer(container);
+            }
+        }
+
+        @Override
+        public String putBlob(String container, Blob blob) {
+            try {
+                return super.putBlob(container, blob);
+            } finally {
+                invalidate(container, blob.getMetadata().getName());
+            }
+        }
+
+        @Override
+        public String putBlob(String container, Blob blob, PutOptions options) {
+            try {
+                return super.putBlob(container, blob, options);
+            } finally {
+                invalidate(container, blob.getMetadata().getName());
+            }
+        }
+
+        @Override
+        public String copyBlob(String fromContainer, String fromName, String toContainer, String toName,
+                               CopyOptions options) {
+            try {
+                return super.copyBlob(fromContainer, fromName, toContainer, toName, options);
+            } finally {
+                invalidate(toContainer, toName);
+            }
+        }
+
+        @Override
+        public void removeBlob(String container, String name) {
+            try {
+                super.removeBlob(container, name);
+            } finally {
+                invalidate(container, name);
+            }
+        }
+
+        @Override
+        public void removeBlobs(String container, Iterable<String> names) {
+            try {
+                super.removeBlobs(container, names);
+            } finally {
+                names.forEach(name -> invalidate(container, name));
+            }
+        }
+
+        @Override
+        public String completeMultipartUpload(MultipartUpload mpu, List<MultipartPart> parts) {
+            try {
+                return super.completeMultipartUpload(mpu, parts);
+            } finally {
+                invalidate(mpu.containerName(), mpu.blobName());
+            }
+        }
+    }
+}
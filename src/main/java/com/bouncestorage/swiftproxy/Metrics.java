@@ -0,0 +1,358 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jclouds.blobstore.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters, gauges and latency histograms of the proxy, exposed in the Prometheus text format on {@code /metrics}
+ * and as the attributes of an MBean. Recording is a few {@link LongAdder} increments, so it is cheap enough to be
+ * always on. Metrics that other components already count, e.g. cache statistics, are registered as callbacks and
+ * read when scraped.
+ */
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    private static final String PREFIX = "swiftproxy_";
+    /** Upper bounds of the latency buckets, in seconds. */
+    private static final double[] LATENCY_BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, BackendCall> backendCalls = new ConcurrentHashMap<>();
+    private ObjectName mbeanName;
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private static final class Family {
+        final String help;
+        final Type type;
+        /** Histogram, LongAdder or Supplier of Number, keyed by the label string. */
+        final ConcurrentMap<String, Object> children = new ConcurrentHashMap<>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final class BackendCall {
+        final Histogram latency;
+        final LongAdder errors;
+
+        BackendCall(Histogram latency, LongAdder errors) {
+            this.latency = latency;
+            this.errors = errors;
+        }
+    }
+
+    /** Latency histogram with fixed buckets, as a Prometheus histogram. */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            int i = 0;
+            while (i < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        /** Record the time since {@code startNanos}, as returned by {@link System#nanoTime}. */
+        public void observeSince(long startNanos) {
+            observe(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public double getSumSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+
+        /**
+         * Estimate the {@code q} quantile in seconds by interpolating within its bucket, like Prometheus'
+         * {@code histogram_quantile} does. Observations beyond the last bucket are reported as its upper bound.
+         */
+        public double quantile(double q) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            double rank = q * total;
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                if (seen + counts[i] >= rank && counts[i] > 0) {
+                    double lower = i == 0 ? 0 : LATENCY_BUCKETS[i - 1];
+                    return lower + (LATENCY_BUCKETS[i] - lower) * (rank - seen) / counts[i];
+                }
+                seen += counts[i];
+            }
+            return LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1];
+        }
+    }
+
+    /** Format label pairs, e.g. {@code labels("operation", "object.GET")}. */
+    public static String labels(String... namesAndValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(namesAndValues[i]).append("=\"").append(namesAndValues[i + 1]
+                    .replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return sb.toString();
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(PREFIX + name, k -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is a " + family.type);
+        }
+        return family;
+    }
+
+    /** Return the counter {@code name} with {@code labels}, creating it if needed. */
+    public LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, Type.COUNTER).children.computeIfAbsent(labels, k -> new LongAdder());
+    }
+
+    /** Return the latency histogram {@code name} with {@code labels}, creating it if needed. */
+    public Histogram histogram(String name, String help, String labels) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).children.computeIfAbsent(labels, k -> new Histogram());
+    }
+
+    /** Register a counter that is maintained elsewhere and read when scraped. */
+    public void counter(String name, String help, String labels, Supplier<? extends Number> value) {
+        family(name, help, Type.COUNTER).children.put(labels, value);
+    }
+
+    /** Register a gauge that is read when scraped. */
+    public void gauge(String name, String help, String labels, Supplier<? extends Number> value) {
+        family(name, help, Type.GAUGE).children.put(labels, value);
+    }
+
+    /**
+     * Return {@code blobStore} with the latency and failures of every call recorded per {@link BlobStore} method.
+     * Calls that return a payload are timed until the response starts, not until the payload is consumed.
+     */
+    public BlobStore instrument(BlobStore blobStore) {
+        return (BlobStore) Proxy.newProxyInstance(BlobStore.class.getClassLoader(), new Class<?>[]{BlobStore.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(blobStore, args);
+                    }
+                    BackendCall call = backendCalls.computeIfAbsent(method, m -> new BackendCall(
+                            histogram("backend_call_duration_seconds", "Latency of backend calls.",
+                                    labels("call", m.getName())),
+                            counter("backend_call_errors_total", "Backend calls that threw an exception.",
+                                    labels("call", m.getName()))));
+                    long start = System.nanoTime();
+                    try {
+                        return method.invoke(blobStore, args);
+                    } catch (InvocationTargetException e) {
+                        call.errors.increment();
+                        throw e.getCause();
+                    } finally {
+                        call.latency.observeSince(start);
+                    }
+                });
+    }
+
+    /** Write all metrics in the Prometheus text exposition format, version 0.0.4. */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(families).forEach((name, family) -> {
+            sb.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            new TreeMap<>(family.children).forEach((labels, child) -> {
+                if (child instanceof Histogram) {
+                    Histogram histogram = (Histogram) child;
+                    String prefix = labels.isEmpty() ? "" : labels + ",";
+                    long cumulative = 0;
+                    for (int i = 0; i <= LATENCY_BUCKETS.length; i++) {
+                        cumulative += histogram.buckets[i].sum();
+                        String le = i < LATENCY_BUCKETS.length ? Double.toString(LATENCY_BUCKETS[i]) : "+Inf";
+                        sample(sb, name + "_bucket", prefix + labels("le", le), cumulative);
+                    }
+                    sample(sb, name + "_sum", labels, histogram.getSumSeconds());
+                    sample(sb, name + "_count", labels, cumulative);
+                } else {
+                    sample(sb, name, labels, value(child));
+                }
+            });
+        });
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, Number value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Number value(Object child) {
+        if (child instanceof LongAdder) {
+            return ((LongAdder) child).sum();
+        }
+        Number value = ((Supplier<? extends Number>) child).get();
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * All current values keyed by name and labels. Histograms are summarized by their count, sum and estimated
+     * median and 99th percentile.
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> snapshot = new TreeMap<>();
+        families.forEach((name, family) -> family.children.forEach((labels, child) -> {
+            String suffix = labels.isEmpty() ? "" : "{" + labels.replace("\"", "") + "}";
+            if (child instanceof Histogram) {
+                Histogram histogram = (Histogram) child;
+                snapshot.put(name + "_count" + suffix, histogram.getCount());
+                snapshot.put(name + "_sum" + suffix, histogram.getSumSeconds());
+                snapshot.put(name + "_p50" + suffix, histogram.quantile(0.5));
+                snapshot.put(name + "_p99" + suffix, histogram.quantile(0.99));
+            } else {
+                snapshot.put(name + suffix, value(child));
+            }
+        }));
+        return snapshot;
+    }
+
+    /** Expose the snapshot as the attributes of an MBean named {@code com.bouncestorage.swiftproxy:type=Metrics,...}. */
+    void registerMBean(String properties) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("com.bouncestorage.swiftproxy:type=Metrics," + properties);
+            server.registerMBean(new MetricsMBean(), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            logger.warn("cannot register metrics MBean: {}", e.toString());
+        }
+    }
+
+    void unregisterMBean() {
+        if (mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+            } catch (JMException e) {
+                logger.debug("cannot unregister metrics MBean", e);
+            }
+            mbeanName = null;
+        }
+    }
+
+    ObjectName getMBeanName() {
+        return mbeanName;
+    }
+
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.doubleValue();
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Number> snapshot = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Number value = snapshot.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value.doubleValue()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes = snapshot().keySet().stream()
+                    .map(name -> new MBeanAttributeInfo(name, "double", name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "SwiftProxy metrics", attributes, null, null, null);
+        }
+    }
+}
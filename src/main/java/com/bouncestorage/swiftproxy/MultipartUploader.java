@@ -0,0 +1,447 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.math.LongMath;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.io.MutableContentMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads large object bodies to the backend in parts, several at a time, instead of as a single stream. The body is
+ * cut into parts as it arrives: each part is buffered and handed to an executor of its own, with a thread per part
+ * buffer, and the next one is read while earlier ones upload. Part buffers come from a pool shared by all uploads of
+ * a proxy, so an upload waits for a free buffer rather than exceeding the memory budget, and is answered with 503 if
+ * none is freed in time. The start of a body is read before a buffer is taken, so that bodies that turn out to be
+ * small never hold one. The backend gives a multipart object an ETag of its own. When the client sent the ETag of the
+ * body, it is stored with the object in {@link #ETAG_METADATA} and reported in its place, and the MD5 of the body is
+ * computed while it is read and checked against it. Otherwise the MD5 is only known once the object is complete,
+ * when its metadata can no longer be set, so the ETag of the backend is reported. Listings do not carry the stored
+ * ETag, so they show the ETag of the backend unless {@link #listedETag} is configured to look it up. Any failure
+ * aborts the multipart upload, so that no parts are left behind.
+ */
+public final class MultipartUploader {
+    /** User metadata holding the MD5 of an object uploaded in parts, which is its ETag for Swift clients. */
+    public static final String ETAG_METADATA = "swiftproxy-etag";
+    private static final Logger logger = LoggerFactory.getLogger(MultipartUploader.class);
+    private static final long DEFAULT_THRESHOLD = 64L * 1024 * 1024;
+    private static final int DEFAULT_PART_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    private static final long DEFAULT_BUFFER_TIMEOUT = 60;
+    /** Bytes of a body read before a pooled buffer is taken for it. */
+    private static final int HEAD_SIZE = 64 * 1024;
+    /** The ETag backends give an object uploaded in parts: the MD5 of the MD5s of its parts and their number. */
+    private static final Pattern MULTIPART_ETAG = Pattern.compile("\"?[0-9a-fA-F]{32}-[0-9]+\"?");
+
+    private final long threshold;
+    private final int partSize;
+    private final int concurrency;
+    private final int bufferCount;
+    private final Semaphore buffers;
+    private final long bufferTimeoutSeconds;
+    private final boolean listMD5;
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    /** Uploads the parts; a part is only uploaded while it holds a buffer, so one thread per buffer is enough. */
+    private final BackendExecutor executor;
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder parts = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final LongAdder bufferTimeouts = new LongAdder();
+
+    MultipartUploader(long threshold, int partSize, int concurrency, long memoryBudget, long bufferTimeoutSeconds,
+                      boolean useVirtualThreads) {
+        this(threshold, partSize, concurrency, memoryBudget, bufferTimeoutSeconds, useVirtualThreads, false);
+    }
+
+    MultipartUploader(long threshold, int partSize, int concurrency, long memoryBudget, long bufferTimeoutSeconds,
+                      boolean useVirtualThreads, boolean listMD5) {
+        if (threshold < 0 || partSize <= 0 || concurrency <= 0 || (threshold > 0 && memoryBudget < partSize) ||
+                bufferTimeoutSeconds < 0) {
+            throw new IllegalArgumentException(String.format("invalid multipart upload settings: %d threshold, " +
+                    "%d part size, %d concurrency, %d bytes, %d seconds", threshold, partSize, concurrency,
+                    memoryBudget, bufferTimeoutSeconds));
+        }
+        this.threshold = threshold;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+        this.bufferCount = (int) Math.min(memoryBudget / partSize, Integer.MAX_VALUE);
+        this.buffers = new Semaphore(bufferCount, true);
+        this.bufferTimeoutSeconds = bufferTimeoutSeconds;
+        this.listMD5 = listMD5;
+        this.executor = new BackendExecutor("multipart-upload", Math.max(1, bufferCount), 0, concurrency,
+                useVirtualThreads);
+    }
+
+    static MultipartUploader fromProperties(Properties properties) {
+        return new MultipartUploader(
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_THRESHOLD, DEFAULT_THRESHOLD),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_PART_SIZE, DEFAULT_PART_SIZE),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_CONCURRENCY,
+                        DEFAULT_CONCURRENCY),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_MEMORY_BUDGET,
+                        DEFAULT_MEMORY_BUDGET),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_BUFFER_TIMEOUT,
+                        DEFAULT_BUFFER_TIMEOUT),
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_VIRTUAL_THREADS, false),
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_MULTIPART_UPLOAD_LIST_MD5, false));
+    }
+
+    /** Whether {@code eTag} is one the backend gives an object uploaded in parts. */
+    public static boolean isMultipartETag(@Nullable String eTag) {
+        return eTag != null && MULTIPART_ETAG.matcher(eTag).matches();
+    }
+
+    /**
+     * The ETag to list for {@code meta}, an object listed in {@code container}. Listings do not carry user metadata,
+     * so this is the ETag of the backend, unless the proxy is configured to look up the MD5 of objects listed with
+     * the ETag of a multipart upload. That costs a {@code blobMetadata} call for each of them, made while the
+     * listing streams.
+     */
+    public String listedETag(BlobStore blobStore, String container, StorageMetadata meta) {
+        String eTag = meta.getUserMetadata().get(ETAG_METADATA);
+        if (eTag != null) {
+            return eTag;
+        }
+        eTag = meta.getETag();
+        if (!listMD5 || !isMultipartETag(eTag)) {
+            return eTag;
+        }
+        BlobMetadata blobMeta = blobStore.blobMetadata(container, meta.getName());
+        if (blobMeta == null || !blobMeta.getUserMetadata().containsKey(ETAG_METADATA)) {
+            // removed since it was listed, or uploaded in parts without the proxy
+            return eTag;
+        }
+        return blobMeta.getUserMetadata().get(ETAG_METADATA);
+    }
+
+    /**
+     * Whether a body of {@code contentLength} bytes, -1 if it is chunked, should be uploaded in parts to
+     * {@code blobStore}. Bodies below the threshold and those the backend cannot take in parts of the configured size
+     * are uploaded as a single stream.
+     */
+    public boolean accepts(BlobStore blobStore, long contentLength) {
+        if (threshold == 0 || (contentLength >= 0 && contentLength < threshold)) {
+            return false;
+        }
+        if (partSize < blobStore.getMinimumMultipartPartSize() || partSize > blobStore.getMaximumMultipartPartSize() ||
+                (contentLength >= 0 && LongMath.divide(contentLength, partSize, RoundingMode.CEILING) >
+                        blobStore.getMaximumNumberOfParts())) {
+            logger.debug("{} byte parts do not fit the backend, uploading {} bytes as a single stream", partSize,
+                    contentLength);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Upload {@code blob}, with the body read from {@code in} instead of its payload and {@code contentMD5} its
+     * expected MD5, if known, and return its ETag. A body that turns out to fit in a single part is uploaded with
+     * {@code putBlob}.
+     */
+    public String putBlob(BlobStore blobStore, String container, Blob blob, InputStream in, long contentLength,
+                          @Nullable HashCode contentMD5) throws IOException {
+        PartReader reader = new PartReader(in, contentLength, blobStore.getMaximumNumberOfParts());
+        try {
+            Part first = reader.peek();
+            if (first.length < partSize) {
+                reader.next();
+                return putSinglePart(blobStore, container, blob, first, checkMD5(reader.hash(), contentMD5));
+            }
+            return putParts(blobStore, container, blob, reader, contentMD5);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            reader.releaseAll();
+        }
+    }
+
+    private static String putSinglePart(BlobStore blobStore, String container, Blob blob, Part part, HashCode md5) {
+        MutableContentMetadata contentMetadata = blob.getPayload().getContentMetadata();
+        contentMetadata.setContentLength((long) part.length);
+        contentMetadata.setContentMD5(md5);
+        Payload payload = part.payload();
+        payload.setContentMetadata(contentMetadata);
+        // the body has been read up to its end, so the request stream can be released with the old payload
+        blob.setPayload(payload);
+        return blobStore.putBlob(container, blob);
+    }
+
+    private String putParts(BlobStore blobStore, String container, Blob blob, PartReader reader,
+                            @Nullable HashCode contentMD5) {
+        if (contentMD5 != null) {
+            Map<String, String> userMetadata = new HashMap<>(blob.getMetadata().getUserMetadata());
+            userMetadata.put(ETAG_METADATA, contentMD5.toString());
+            blob.getMetadata().setUserMetadata(userMetadata);
+        }
+        MultipartUpload mpu = blobStore.initiateMultipartUpload(container, blob.getMetadata(), PutOptions.NONE);
+        uploads.increment();
+        List<MultipartPart> uploaded = Collections.synchronizedList(new ArrayList<>());
+        try {
+            executor.forEach(() -> reader, concurrency, part -> {
+                try {
+                    uploaded.add(blobStore.uploadMultipartPart(mpu, part.number, part.payload()));
+                    parts.increment();
+                } finally {
+                    reader.release(part);
+                }
+            });
+            HashCode md5 = checkMD5(reader.hash(), contentMD5);
+            uploaded.sort(Comparator.comparingInt(MultipartPart::partNumber));
+            String eTag = blobStore.completeMultipartUpload(mpu, uploaded);
+            return contentMD5 != null ? md5.toString() : eTag;
+        } catch (RuntimeException | Error e) {
+            aborts.increment();
+            try {
+                blobStore.abortMultipartUpload(mpu);
+            } catch (RuntimeException abortFailure) {
+                logger.warn("could not abort multipart upload {} of {}/{}", mpu.id(), container, mpu.blobName(),
+                        abortFailure);
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private static HashCode checkMD5(HashCode md5, @Nullable HashCode contentMD5) {
+        if (contentMD5 != null && !contentMD5.equals(md5)) {
+            // Unprocessable Entity, as Swift answers an ETag that does not match the body
+            throw new ClientErrorException(md5 + " != " + contentMD5, 422);
+        }
+        return md5;
+    }
+
+    private byte[] acquireBuffer() throws InterruptedIOException {
+        try {
+            if (bufferTimeoutSeconds == 0) {
+                buffers.acquire();
+            } else if (!buffers.tryAcquire(bufferTimeoutSeconds, TimeUnit.SECONDS)) {
+                bufferTimeouts.increment();
+                throw new ServiceUnavailableException("no part buffer freed within " + bufferTimeoutSeconds +
+                        " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a part buffer");
+        }
+        byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[partSize];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        freeBuffers.add(buffer);
+        buffers.release();
+    }
+
+    /** Number of multipart uploads started. */
+    public long getUploadCount() {
+        return uploads.sum();
+    }
+
+    /** Number of parts uploaded. */
+    public long getPartCount() {
+        return parts.sum();
+    }
+
+    /** Number of multipart uploads aborted after a failure. */
+    public long getAbortCount() {
+        return aborts.sum();
+    }
+
+    /** Number of part buffers currently holding a part. */
+    public int getBuffersInUse() {
+        return bufferCount - buffers.availablePermits();
+    }
+
+    /** Number of uploads answered with 503 because no part buffer was freed in time. */
+    public long getBufferTimeoutCount() {
+        return bufferTimeouts.sum();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /** One part of a body, held in a pooled buffer, unless it is a short body, until it has been uploaded. */
+    private final class Part {
+        private final int number;
+        private final byte[] buffer;
+        private final int length;
+        private final boolean pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Part(int number, byte[] buffer, int length, boolean pooled) {
+            this.number = number;
+            this.buffer = buffer;
+            this.length = length;
+            this.pooled = pooled;
+        }
+
+        Payload payload() {
+            Payload payload = Payloads.newByteSourcePayload(ByteSource.wrap(buffer).slice(0, length));
+            payload.getContentMetadata().setContentLength((long) length);
+            return payload;
+        }
+
+        void release() {
+            if (pooled && released.compareAndSet(false, true)) {
+                releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a body into parts, hashing it on the way. Every part it reads is tracked until released, so that parts
+     * never handed to an upload still return their buffers.
+     */
+    private final class PartReader extends AbstractIterator<Part> {
+        private final InputStream in;
+        private final long contentLength;
+        private final int maxParts;
+        private final Hasher hasher = Hashing.md5().newHasher();
+        private final Set<Part> unreleased = ConcurrentHashMap.newKeySet();
+        private long total;
+        private int number;
+
+        PartReader(InputStream in, long contentLength, int maxParts) {
+            this.in = in;
+            this.contentLength = contentLength;
+            this.maxParts = maxParts;
+        }
+
+        @Override
+        protected Part computeNext() {
+            if (number > 0 && (total % partSize != 0 || total == contentLength)) {
+                // the previous part was short or the last one, so the body has ended
+                return endOfData();
+            }
+            try {
+                Part part = readPart();
+                total += part.length;
+                if (part.length < partSize && contentLength >= 0 && total != contentLength) {
+                    part.release();
+                    throw new IOException("request body ended after " + total + " of " + contentLength + " bytes");
+                }
+                if (part.length == 0 && number > 0) {
+                    part.release();
+                    return endOfData();
+                }
+                if (++number > maxParts) {
+                    part.release();
+                    throw new IOException("request body exceeds " + maxParts + " parts of " + partSize + " bytes");
+                }
+                hasher.putBytes(part.buffer, 0, part.length);
+                unreleased.add(part);
+                return part;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Read the next part. The start of the body is read into a buffer of its own first, and only copied into a
+         * pooled buffer once more of the body arrives. Likewise, a body of unknown length is only read into another
+         * pooled buffer once a byte beyond the previous part has arrived.
+         */
+        private Part readPart() throws IOException {
+            byte[] head = null;
+            int length = 0;
+            if (number == 0 && partSize > HEAD_SIZE) {
+                head = new byte[HEAD_SIZE];
+                length = ByteStreams.read(in, head, 0, HEAD_SIZE);
+                if (length < HEAD_SIZE) {
+                    return new Part(number + 1, head, length, false);
+                }
+            } else if (number > 0 && contentLength < 0) {
+                int b = in.read();
+                if (b == -1) {
+                    return new Part(number + 1, new byte[0], 0, false);
+                }
+                head = new byte[] {(byte) b};
+                length = 1;
+            }
+            byte[] buffer = acquireBuffer();
+            try {
+                if (head != null) {
+                    System.arraycopy(head, 0, buffer, 0, length);
+                }
+                length += ByteStreams.read(in, buffer, length, partSize - length);
+            } catch (IOException | RuntimeException e) {
+                releaseBuffer(buffer);
+                throw e;
+            }
+            return new Part(number + 1, buffer, length, true);
+        }
+
+        /** MD5 of the body, once all of it has been read. */
+        HashCode hash() {
+            return hasher.hash();
+        }
+
+        void release(Part part) {
+            unreleased.remove(part);
+            part.release();
+        }
+
+        void releaseAll() {
+            unreleased.forEach(Part::release);
+            unreleased.clear();
+        }
+    }
+}
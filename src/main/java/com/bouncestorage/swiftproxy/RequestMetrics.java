@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the latency and status of every request per Swift operation, e.g. {@code object.GET}, from the moment
+ * Jersey receives it until the response has been written, including the time a suspended request waits for the
+ * transfer executor. Each request is traced with a {@link RequestTrace}: its transaction id is returned in
+ * {@code X-Trans-Id}, and its backend calls are logged with the request in the
+ * {@code com.bouncestorage.swiftproxy.access} log and, if enabled, reported in the {@code X-Backend-Calls} response
+ * header. The header is set before the body is written, so it does not include the segment reads of a large object.
+ * Requests slower than the configured threshold are logged with a breakdown of where the time went.
+ */
+final class RequestMetrics implements ApplicationEventListener {
+    static final String TRANS_ID_HEADER = "X-Trans-Id";
+    static final String BACKEND_CALLS_HEADER = "X-Backend-Calls";
+    private static final Logger logger = LoggerFactory.getLogger(RequestMetrics.class);
+    private static final Logger accessLog = LoggerFactory.getLogger("com.bouncestorage.swiftproxy.access");
+    /** The methods of Swift requests, others are labelled alike so that clients cannot add operations. */
+    private static final ImmutableSet<String> METHODS = ImmutableSet.of("GET", "HEAD", "PUT", "POST", "DELETE",
+            "COPY", "OPTIONS");
+    private static final String UNMATCHED_OPERATION = "unmatched.other";
+
+    private final Metrics metrics;
+    private final boolean backendCallsHeader;
+    private final long slowRequestNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    RequestMetrics(Metrics metrics, boolean backendCallsHeader, long slowRequestMillis) {
+        this.metrics = metrics;
+        this.backendCallsHeader = backendCallsHeader;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+        metrics.gauge("requests_in_flight", "Requests that are being processed.", "", inFlight::get);
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        // only requests are measured
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        RequestTrace trace = new RequestTrace(event.getContainerRequest().getHeaderString("X-Trans-Id-Extra"));
+        return e -> {
+            switch (e.getType()) {
+            case RESOURCE_METHOD_START:
+                // a suspended request carries this on to its transfer thread
+                RequestTrace.setCurrent(trace);
+                break;
+            case RESOURCE_METHOD_FINISHED:
+                RequestTrace.setCurrent(null);
+                break;
+            case RESP_FILTERS_START:
+                if (e.getContainerResponse() != null) {
+                    MultivaluedMap<String, Object> headers = e.getContainerResponse().getHeaders();
+                    headers.putSingle(TRANS_ID_HEADER, trace.getTransId());
+                    if (backendCallsHeader) {
+                        headers.putSingle(BACKEND_CALLS_HEADER, trace.getBackendCalls().toString());
+                    }
+                }
+                break;
+            case FINISHED:
+                // record first, so that a request is accounted for once it is no longer in flight
+                try {
+                    finished(e, start, trace);
+                } finally {
+                    trace.finish();
+                    inFlight.decrementAndGet();
+                }
+                break;
+            default:
+                break;
+            }
+        };
+    }
+
+    private void finished(RequestEvent event, long start, RequestTrace trace) {
+        long end = System.nanoTime();
+        long nanos = end - start;
+        BackendCalls calls = trace.getBackendCalls();
+        String operation = operation(event);
+        String labels = Metrics.labels("operation", operation);
+        metrics.histogram("request_duration_seconds", "Latency of Swift requests.", labels).observe(nanos);
+        ContainerResponse response = event.getContainerResponse();
+        int status = response == null ? 500 : response.getStatus();
+        metrics.counter("requests_total", "Swift requests by operation and status class.",
+                Metrics.labels("operation", operation, "status", status / 100 + "xx")).increment();
+
+        Map<String, BackendCalls.Call> backend = calls.getCalls();
+        if (!backend.isEmpty()) {
+            metrics.histogram("request_backend_duration_seconds",
+                    "Time Swift requests spent in backend calls, summed over the calls.", labels)
+                    .observe(calls.getNanos());
+            backend.forEach((call, c) -> metrics.counter("request_backend_calls_total",
+                    "Backend calls made by Swift requests, by operation and call.",
+                    Metrics.labels("operation", operation, "call", call)).add(c.getCount()));
+        }
+        if (trace.getFirstByteNanos() > 0) {
+            metrics.histogram("request_first_byte_seconds",
+                    "Time until Swift requests read the first byte of an object body from the backend.", labels)
+                    .observe(trace.getFirstByteNanos());
+        }
+        ContainerRequest request = event.getContainerRequest();
+        if (accessLog.isInfoEnabled()) {
+            accessLog.info("{} {} {} {} {} ms, backend {}", trace.getTransId(), request.getMethod(),
+                    request.getRequestUri().getRawPath(), status, TimeUnit.NANOSECONDS.toMillis(nanos), calls);
+        }
+        if (slowRequestNanos > 0 && nanos >= slowRequestNanos) {
+            logger.warn("slow request {} {} {} {}: {}", trace.getTransId(), request.getMethod(),
+                    request.getRequestUri().getRawPath(), status, trace.breakdown(end));
+        }
+    }
+
+    /**
+     * Name the operation after the resource class and HTTP method, e.g. {@code container.PUT}. Requests that match
+     * no resource method or use another method are all {@code unmatched.other}.
+     */
+    private static String operation(RequestEvent event) {
+        ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+        String httpMethod = event.getContainerRequest().getMethod();
+        if (method == null || !METHODS.contains(httpMethod)) {
+            return UNMATCHED_OPERATION;
+        }
+        String resource = method.getInvocable().getHandler().getHandlerClass().getSimpleName()
+                .replaceFirst("Resource$", "").toLowerCase();
+        return resource + "." + httpMethod;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableSet;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.DelegatingPayload;
+import org.slf4j.MDC;
+
+/**
+ * Tracing state of one Swift request: its transaction id, the time spent looking up the account's store, the backend
+ * calls made for it and when the first byte of an object body arrived from the backend. A request is current on the
+ * HTTP worker running its resource method, on the transfer thread of a suspended request and, while a backend call
+ * runs, on the thread making it. There its transaction id is in the {@code transId} MDC entry and is sent to the
+ * backend as {@code X-Trans-Id}.
+ */
+final class RequestTrace {
+    static final String MDC_KEY = "transId";
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+    /** Methods answered by jclouds itself, without a request to the backend. */
+    private static final ImmutableSet<String> LOCAL_METHODS = ImmutableSet.of("getContext", "blobBuilder",
+            "getMinimumMultipartPartSize", "getMaximumMultipartPartSize", "getMaximumNumberOfParts");
+    private static final CharMatcher TRANS_ID_EXTRA = CharMatcher.inRange('a', 'z').or(CharMatcher.inRange('A', 'Z'))
+            .or(CharMatcher.inRange('0', '9')).or(CharMatcher.anyOf("-_.")).precomputed();
+    private static final int TRANS_ID_EXTRA_LENGTH = 32;
+
+    private final String transId;
+    private final long startNanos;
+    private final BackendCalls backendCalls = new BackendCalls();
+    private final LongAdder authNanos = new LongAdder();
+    /** Nanoseconds from the start of the request to the first byte of a backend object body, 0 until then. */
+    private final AtomicLong firstByteNanos = new AtomicLong();
+    /** Released once the response has been written, e.g. the pooled backend contexts in use by the request. */
+    private final Queue<Runnable> releases = new ConcurrentLinkedQueue<>();
+
+    RequestTrace(String transIdExtra) {
+        this.transId = newTransId(transIdExtra);
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Mint a transaction id in the format of Swift: {@code tx}, 21 random hex digits and the time in seconds in hex,
+     * followed by the client supplied {@code X-Trans-Id-Extra}, if any, limited to safe characters.
+     */
+    static String newTransId(String extra) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = String.format("tx%016x%05x-%010x", random.nextLong(), random.nextInt(1 << 20),
+                System.currentTimeMillis() / 1000);
+        if (extra != null) {
+            extra = TRANS_ID_EXTRA.retainFrom(extra);
+            if (!extra.isEmpty()) {
+                id += "-" + extra.substring(0, Math.min(extra.length(), TRANS_ID_EXTRA_LENGTH));
+            }
+        }
+        return id;
+    }
+
+    /** The request being worked on by this thread, or null. */
+    static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /** Make {@code trace} the request worked on by this thread and return the previous one. */
+    static RequestTrace setCurrent(RequestTrace trace) {
+        RequestTrace previous = CURRENT.get();
+        if (trace == previous) {
+            return previous;
+        }
+        if (trace == null) {
+            CURRENT.remove();
+            MDC.remove(MDC_KEY);
+        } else {
+            CURRENT.set(trace);
+            MDC.put(MDC_KEY, trace.transId);
+        }
+        return previous;
+    }
+
+    String getTransId() {
+        return transId;
+    }
+
+    BackendCalls getBackendCalls() {
+        return backendCalls;
+    }
+
+    void recordAuth(long nanos) {
+        authNanos.add(nanos);
+    }
+
+    /** Run {@code release} when the request has finished, after its response has been written. */
+    void hold(Runnable release) {
+        releases.add(release);
+    }
+
+    void finish() {
+        Runnable release;
+        while ((release = releases.poll()) != null) {
+            release.run();
+        }
+    }
+
+    /** Nanoseconds from the start of the request until the first byte of an object body was read, or 0. */
+    long getFirstByteNanos() {
+        return firstByteNanos.get();
+    }
+
+    /**
+     * Return {@code blobStore} with every call made as part of this request: counted and timed, and with the first
+     * read from any object body it returns recorded.
+     */
+    BlobStore instrument(BlobStore blobStore) {
+        return (BlobStore) Proxy.newProxyInstance(BlobStore.class.getClassLoader(), new Class<?>[]{BlobStore.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class || LOCAL_METHODS.contains(method.getName())) {
+                        return method.invoke(blobStore, args);
+                    }
+                    RequestTrace previous = setCurrent(this);
+                    long start = System.nanoTime();
+                    try {
+                        Object result = method.invoke(blobStore, args);
+                        if (result instanceof Blob && ((Blob) result).getPayload() != null) {
+                            Blob blob = (Blob) result;
+                            return Utils.withPayload(blob, new FirstBytePayload(blob.getPayload()));
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        backendCalls.record(method.getName(), System.nanoTime() - start);
+                        setCurrent(previous);
+                    }
+                });
+    }
+
+    /**
+     * Break the request down into its phases, e.g. {@code 1503.2 ms: auth 0.1 ms, first byte after 25.8 ms,
+     * streamed in 1477.4 ms; 2 calls, 25.1 ms; blobMetadata=1 (3.0 ms); getBlob=1 (22.1 ms)}.
+     */
+    String breakdown(long endNanos) {
+        long total = endNanos - startNanos;
+        long firstByte = firstByteNanos.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append(BackendCalls.millis(total)).append(" ms: auth ").append(BackendCalls.millis(authNanos.sum()))
+                .append(" ms, ");
+        if (firstByte == 0) {
+            sb.append("no object body read");
+        } else {
+            sb.append("first byte after ").append(BackendCalls.millis(firstByte)).append(" ms, streamed in ")
+                    .append(BackendCalls.millis(total - firstByte)).append(" ms");
+        }
+        return sb.append("; ").append(backendCalls).toString();
+    }
+
+    private void firstByte() {
+        if (firstByteNanos.get() == 0) {
+            firstByteNanos.compareAndSet(0, Math.max(1, System.nanoTime() - startNanos));
+        }
+    }
+
+    /** A payload whose streams record the first byte read from them. */
+    private final class FirstBytePayload extends DelegatingPayload {
+        FirstBytePayload(Payload delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new FilterInputStream(super.openStream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        firstByte();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        firstByte();
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInput() {
+            try {
+                return openStream();
+            } catch (IOException e) {
+                throw propagate(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Worker pool and memory budget shared by all large object downloads of a proxy. While one manifest segment is
+ * streamed to the client, the next segments that fit in the budget are fetched in the background and buffered in
+ * memory. Read-ahead stops at a segment that does not fit, which is opened once it is reached.
+ */
+public final class SegmentReadAhead {
+    private static final int DEFAULT_SEGMENTS = 4;
+    private static final int DEFAULT_THREADS = 16;
+    private static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final int QUEUE_SIZE = 1024;
+
+    private final int segments;
+    private final Semaphore budget;
+    private final ThreadPoolExecutor executor;
+
+    SegmentReadAhead(int segments, int threads, long memoryBudget) {
+        if (segments < 0 || threads <= 0 || memoryBudget < 0) {
+            throw new IllegalArgumentException(String.format("invalid read-ahead settings: %d segments, " +
+                    "%d threads, %d bytes", segments, threads, memoryBudget));
+        }
+        this.segments = segments;
+        this.budget = new Semaphore((int) Math.min(memoryBudget, Integer.MAX_VALUE));
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_SIZE),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("swiftproxy-read-ahead-%d")
+                        .setDaemon(true)
+                        .build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    static SegmentReadAhead fromProperties(Properties properties) {
+        return new SegmentReadAhead(
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_READ_AHEAD_SEGMENTS, DEFAULT_SEGMENTS),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_READ_AHEAD_THREADS, DEFAULT_THREADS),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_READ_AHEAD_MEMORY_BUDGET,
+                        DEFAULT_MEMORY_BUDGET));
+    }
+
+    /** Number of segments fetched ahead of the one currently being streamed. */
+    public int getSegments() {
+        return segments;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /** Reserve {@code bytes} of the memory budget without blocking. */
+    public boolean tryReserve(long bytes) {
+        return bytes <= Integer.MAX_VALUE && budget.tryAcquire((int) bytes);
+    }
+
+    public void release(long bytes) {
+        if (bytes > 0) {
+            budget.release((int) bytes);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.grizzly.http.KeepAlive;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.memory.ByteBufferManager;
+import org.glassfish.grizzly.memory.HeapMemoryManager;
+import org.glassfish.grizzly.memory.MemoryManager;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+
+/**
+ * Applies the {@code swiftproxy.server.*} properties to the Grizzly listeners of the proxy. Settings that are not
+ * configured keep the Grizzly defaults. The effective values are reported on {@code /info}.
+ */
+final class ServerSettings {
+    private ServerSettings() {
+        // Hide the constructor for a Utils class
+    }
+
+    /**
+     * Configure the listeners of {@code server}, which must not be started yet, and return the effective values.
+     * Requests are run on {@code virtualWorkers} instead of the worker pool if it is not null.
+     */
+    static Map<String, Object> apply(HttpServer server, Properties properties, ExecutorService virtualWorkers) {
+        Map<String, Object> effective = new TreeMap<>();
+        for (NetworkListener listener : server.getListeners()) {
+            TCPNIOTransport transport = listener.getTransport();
+            int selectors = Utils.getIntProperty(properties, SwiftProxy.PROPERTY_SERVER_SELECTOR_THREADS, 0);
+            if (selectors > 0) {
+                transport.setSelectorRunnersCount(selectors);
+            }
+
+            ThreadPoolConfig workers = transport.getWorkerThreadPoolConfig();
+            if (virtualWorkers != null) {
+                transport.setWorkerThreadPool(virtualWorkers);
+                workers = null;
+            } else if (workers != null) {
+                workers = workers.copy();
+                int threads = Utils.getIntProperty(properties, SwiftProxy.PROPERTY_SERVER_WORKER_THREADS, 0);
+                if (threads > 0) {
+                    workers.setCorePoolSize(threads).setMaxPoolSize(threads);
+                }
+                workers.setQueueLimit(Utils.getIntProperty(properties, SwiftProxy.PROPERTY_SERVER_WORKER_QUEUE_LIMIT,
+                        workers.getQueueLimit()));
+                transport.setWorkerThreadPoolConfig(workers);
+            }
+
+            KeepAlive keepAlive = listener.getKeepAlive();
+            keepAlive.setIdleTimeoutInSeconds(Utils.getIntProperty(properties,
+                    SwiftProxy.PROPERTY_SERVER_KEEP_ALIVE_TIMEOUT, keepAlive.getIdleTimeoutInSeconds()));
+            keepAlive.setMaxRequestsCount(Utils.getIntProperty(properties,
+                    SwiftProxy.PROPERTY_SERVER_KEEP_ALIVE_MAX_REQUESTS, keepAlive.getMaxRequestsCount()));
+
+            transport.setReadTimeout(Utils.getLongProperty(properties, SwiftProxy.PROPERTY_SERVER_READ_TIMEOUT,
+                    transport.getReadTimeout(TimeUnit.SECONDS)), TimeUnit.SECONDS);
+            transport.setWriteTimeout(Utils.getLongProperty(properties, SwiftProxy.PROPERTY_SERVER_WRITE_TIMEOUT,
+                    transport.getWriteTimeout(TimeUnit.SECONDS)), TimeUnit.SECONDS);
+            transport.setReadBufferSize(Utils.getIntProperty(properties, SwiftProxy.PROPERTY_SERVER_READ_BUFFER_SIZE,
+                    transport.getReadBufferSize()));
+            transport.setWriteBufferSize(Utils.getIntProperty(properties,
+                    SwiftProxy.PROPERTY_SERVER_WRITE_BUFFER_SIZE, transport.getWriteBufferSize()));
+            listener.setSendFileEnabled(Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_SENDFILE, true));
+            listener.setMaxHttpHeaderSize(Utils.getIntProperty(properties, SwiftProxy.PROPERTY_SERVER_MAX_HEADER_SIZE,
+                    listener.getMaxHttpHeaderSize()));
+
+            String memoryManager = properties == null ? null :
+                    properties.getProperty(SwiftProxy.PROPERTY_SERVER_MEMORY_MANAGER);
+            if ("heap".equals(memoryManager)) {
+                transport.setMemoryManager(new HeapMemoryManager());
+            } else if ("direct".equals(memoryManager)) {
+                transport.setMemoryManager(new ByteBufferManager(true));
+            } else if (memoryManager != null) {
+                throw new IllegalArgumentException(SwiftProxy.PROPERTY_SERVER_MEMORY_MANAGER +
+                        " must be heap or direct: " + memoryManager);
+            }
+
+            effective.put("selector_threads", transport.getSelectorRunnersCount() > 0 ?
+                    transport.getSelectorRunnersCount() : Runtime.getRuntime().availableProcessors());
+            if (workers != null) {
+                effective.put("worker_threads", workers.getMaxPoolSize());
+                effective.put("worker_queue_limit", workers.getQueueLimit());
+            }
+            effective.put("virtual_threads", virtualWorkers != null);
+            effective.put("keep_alive_timeout", keepAlive.getIdleTimeoutInSeconds());
+            effective.put("keep_alive_max_requests", keepAlive.getMaxRequestsCount());
+            effective.put("read_timeout", transport.getReadTimeout(TimeUnit.SECONDS));
+            effective.put("write_timeout", transport.getWriteTimeout(TimeUnit.SECONDS));
+            effective.put("read_buffer_size", transport.getReadBufferSize());
+            effective.put("write_buffer_size", transport.getWriteBufferSize());
+            effective.put("max_header_size", listener.getMaxHttpHeaderSize());
+            effective.put("memory_manager", describe(transport.getMemoryManager()));
+            effective.put("sendfile", listener.isSendFileEnabled());
+        }
+        return effective;
+    }
+
+    private static String describe(MemoryManager memoryManager) {
+        if (memoryManager instanceof HeapMemoryManager) {
+            return "heap";
+        } else if (memoryManager instanceof ByteBufferManager) {
+            return ((ByteBufferManager) memoryManager).isDirect() ? "direct" : "bytebuffer";
+        }
+        return memoryManager.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.bouncestorage.swiftproxy.v1.InfoResource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Self-contained auth tokens that any proxy sharing the same secret can validate without a lookup. A token carries
+ * the identity, its expiry and the credential, encrypted with AES-GCM so that a node which has not seen the
+ * authentication can still open the backend for the identity. The whole token is signed with HMAC-SHA256.
+ */
+final class SignedTokens {
+    private static final Logger logger = LoggerFactory.getLogger(SignedTokens.class);
+    private static final String PREFIX = "AUTH_tk";
+    private static final byte VERSION = 1;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int MIN_SECRET_LENGTH = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec macKey;
+    private final SecretKeySpec encryptionKey;
+    private final long lifetimeSeconds;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+
+    /** The identity of a verified token, and its credential, which is only decrypted when asked for. */
+    final class Claims {
+        final String identity;
+        private final byte[] iv;
+        private final byte[] sealed;
+
+        Claims(String identity, byte[] iv, byte[] sealed) {
+            this.identity = identity;
+            this.iv = iv;
+            this.sealed = sealed;
+        }
+
+        /** Decrypt the credential, or return null if it cannot be. */
+        String getCredential() {
+            try {
+                Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+                cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+                return new String(cipher.doFinal(sealed), StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException e) {
+                logger.debug("undecryptable token credential", e);
+                return null;
+            }
+        }
+    }
+
+    SignedTokens(String secret, long lifetimeSeconds, Clock clock) {
+        if (secret.length() < MIN_SECRET_LENGTH || lifetimeSeconds <= 0) {
+            throw new IllegalArgumentException(String.format("invalid token settings: secret must have at least " +
+                    "%d characters and lifetime must be positive", MIN_SECRET_LENGTH));
+        }
+        byte[] master = secret.getBytes(StandardCharsets.UTF_8);
+        // separate keys for signing and encryption, derived from the shared secret
+        this.macKey = new SecretKeySpec(hmac(new SecretKeySpec(master, MAC_ALGORITHM), "signature"), MAC_ALGORITHM);
+        this.encryptionKey = new SecretKeySpec(
+                Arrays.copyOf(hmac(new SecretKeySpec(master, MAC_ALGORITHM), "encryption"), 16), "AES");
+        this.lifetimeSeconds = lifetimeSeconds;
+        this.clock = requireNonNull(clock);
+    }
+
+    /** Return null unless {@code swiftproxy.auth.token-secret} is set. */
+    static SignedTokens fromProperties(Properties properties) {
+        String secret = properties == null ? null :
+                properties.getProperty(SwiftProxy.PROPERTY_AUTH_TOKEN_SECRET);
+        if (secret == null) {
+            return null;
+        }
+        return new SignedTokens(secret, InfoResource.CONFIG.tempauth.token_life, Clock.systemUTC());
+    }
+
+    String sign(String identity, String credential) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = cipher.doFinal(credential.getBytes(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeLong(clock.instant().getEpochSecond() + lifetimeSeconds);
+            out.writeUTF(identity);
+            out.write(iv);
+            out.writeShort(sealed.length);
+            out.write(sealed);
+            byte[] payload = bytes.toByteArray();
+            return PREFIX + ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(hmac(macKey, payload));
+        } catch (GeneralSecurityException | IOException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * Return the claims of {@code token}, or null if it was not signed with this secret or has expired. Only the
+     * signature and expiry are checked, the credential is decrypted by {@link Claims#getCredential}.
+     */
+    Claims verify(String token) {
+        if (token == null || !token.startsWith(PREFIX)) {
+            return null;
+        }
+        int dot = token.indexOf('.', PREFIX.length());
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            byte[] payload = DECODER.decode(token.substring(PREFIX.length(), dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, hmac(macKey, payload))) {
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            long expires = in.readLong();
+            if (clock.instant().getEpochSecond() >= expires) {
+                logger.debug("token expired at {}", expires);
+                return null;
+            }
+            String identity = in.readUTF();
+            byte[] iv = new byte[IV_LENGTH];
+            in.readFully(iv);
+            byte[] sealed = new byte[in.readUnsignedShort()];
+            in.readFully(sealed);
+            return new Claims(identity, iv, sealed);
+        } catch (IllegalArgumentException | IOException e) {
+            logger.debug("malformed token", e);
+            return null;
+        }
+    }
+
+    private static byte[] hmac(SecretKeySpec key, String data) {
+        return hmac(key, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] hmac(SecretKeySpec key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw propagate(e);
+        }
+    }
+}
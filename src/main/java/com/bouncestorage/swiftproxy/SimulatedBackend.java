@@ -0,0 +1,256 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.DelegatingPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes a local backend such as {@code transient} or {@code filesystem} behave like a remote object store, so that
+ * caching, read-ahead and parallelism can be measured without a network. Each backend call first waits for a latency
+ * drawn from a log-normal distribution, then fails with the configured error and throttle rates, and object bodies
+ * are streamed no faster than the configured bandwidth. Latency and rates can be set per {@link BlobStore} method by
+ * appending its name to the property, e.g. {@code swiftproxy.simulate.latency.getBlob}.
+ */
+final class SimulatedBackend {
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedBackend.class);
+    private static final String PREFIX = "swiftproxy.simulate.";
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z99 = 2.3263;
+    private static final ImmutableSet<String> PER_CALL = ImmutableSet.of("latency", "error-rate", "throttle-rate");
+
+    private final Properties properties;
+    private final long bandwidth;
+    private final Map<Method, Call> calls = new HashMap<>();
+
+    /** Latency and failure rates of one {@link BlobStore} method. */
+    private static final class Call {
+        private final double medianMillis;
+        private final double sigma;
+        private final double errorRate;
+        private final double throttleRate;
+
+        Call(double medianMillis, double p99Millis, double errorRate, double throttleRate) {
+            if (medianMillis < 0 || p99Millis < medianMillis || errorRate < 0 || throttleRate < 0 ||
+                    errorRate + throttleRate > 1) {
+                throw new IllegalArgumentException("invalid simulated latency or rates");
+            }
+            this.medianMillis = medianMillis;
+            this.sigma = medianMillis == 0 ? 0 : Math.log(p99Millis / medianMillis) / Z99;
+            this.errorRate = errorRate;
+            this.throttleRate = throttleRate;
+        }
+
+        void before() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (medianMillis > 0) {
+                double millis = medianMillis * Math.exp(sigma * random.nextGaussian());
+                Uninterruptibles.sleepUninterruptibly((long) (millis * 1000), TimeUnit.MICROSECONDS);
+            }
+            double r = random.nextDouble();
+            if (r < errorRate) {
+                throw failure(500, "Internal Server Error");
+            } else if (r < errorRate + throttleRate) {
+                throw failure(503, "Slow Down");
+            }
+        }
+
+        private static HttpResponseException failure(int status, String message) {
+            return new HttpResponseException("simulated backend failure", null,
+                    HttpResponse.builder().statusCode(status).message(message).build());
+        }
+    }
+
+    private SimulatedBackend(Properties properties) {
+        this.properties = properties;
+        this.bandwidth = Utils.getLongProperty(properties, SwiftProxy.PROPERTY_SIMULATE_BANDWIDTH, 0);
+        if (bandwidth < 0) {
+            throw new IllegalArgumentException("invalid simulated bandwidth: " + bandwidth);
+        }
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        for (Method method : BlobStore.class.getMethods()) {
+            calls.put(method, call(method));
+            names.add(method.getName());
+        }
+        // a misspelt property would otherwise silently simulate nothing
+        ImmutableSet<String> methods = names.build();
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith(PREFIX) || name.equals(SwiftProxy.PROPERTY_SIMULATE_BANDWIDTH)) {
+                continue;
+            }
+            List<String> parts = Splitter.on('.').limit(2).splitToList(name.substring(PREFIX.length()));
+            if (!PER_CALL.contains(parts.get(0)) || (parts.size() == 2 && !methods.contains(parts.get(1)))) {
+                throw new IllegalArgumentException("unknown property: " + name);
+            }
+        }
+    }
+
+    static SimulatedBackend fromProperties(Properties properties) {
+        if (properties == null || properties.stringPropertyNames().stream().noneMatch(p -> p.startsWith(PREFIX))) {
+            return null;
+        }
+        logger.warn("simulating a remote backend, requests are delayed and may fail on purpose");
+        return new SimulatedBackend(properties);
+    }
+
+    /** Return {@code blobStore} with the simulated latency, failures and bandwidth applied to every call. */
+    BlobStore decorate(BlobStore blobStore) {
+        return (BlobStore) Proxy.newProxyInstance(BlobStore.class.getClassLoader(), new Class<?>[]{BlobStore.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class || method.getName().equals("getContext")) {
+                        return method.invoke(blobStore, args);
+                    }
+                    calls.get(method).before();
+                    if (bandwidth > 0 && args != null) {
+                        for (int i = 0; i < args.length; i++) {
+                            if (args[i] instanceof Blob) {
+                                args[i] = throttle((Blob) args[i]);
+                            } else if (args[i] instanceof Payload) {
+                                args[i] = new ThrottledPayload((Payload) args[i]);
+                            }
+                        }
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(blobStore, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (bandwidth > 0 && result instanceof Blob) {
+                        result = throttle((Blob) result);
+                    }
+                    return result;
+                });
+    }
+
+    private Call call(Method method) {
+        List<String> latency = Splitter.on(',').trimResults().splitToList(property("latency", method, "0"));
+        double median = Double.parseDouble(latency.get(0));
+        double p99 = latency.size() > 1 ? Double.parseDouble(latency.get(1)) : median;
+        return new Call(median, p99, Double.parseDouble(property("error-rate", method, "0")),
+                Double.parseDouble(property("throttle-rate", method, "0")));
+    }
+
+    private String property(String name, Method method, String defaultValue) {
+        return properties.getProperty(PREFIX + name + "." + method.getName(),
+                properties.getProperty(PREFIX + name, defaultValue));
+    }
+
+    private Blob throttle(Blob blob) {
+        if (blob.getPayload() == null || blob.getPayload() instanceof ThrottledPayload) {
+            return blob;
+        }
+        return Utils.withPayload(blob, new ThrottledPayload(blob.getPayload()));
+    }
+
+    /** A payload whose streams are read no faster than the simulated bandwidth, each stream on its own. */
+    private final class ThrottledPayload extends DelegatingPayload {
+        ThrottledPayload(Payload delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new ThrottledInputStream(super.openStream(), bandwidth);
+        }
+
+        @Override
+        public InputStream getInput() {
+            try {
+                return openStream();
+            } catch (IOException e) {
+                throw propagate(e);
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds it takes to transfer {@code bytes} at {@code bytesPerSecond}, in whole seconds and the rest so that
+     * {@code bytes} times the nanoseconds of a second does not overflow.
+     */
+    static long transferNanos(long bytes, long bytesPerSecond) {
+        return TimeUnit.SECONDS.toNanos(bytes / bytesPerSecond) +
+                (long) ((double) (bytes % bytesPerSecond) / bytesPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /** Sleeps after each read until the bytes read so far could have arrived at {@code bytesPerSecond}. */
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final long bytesPerSecond;
+        private long start;
+        private long bytes;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private void pace(long n) {
+            if (bytes == 0) {
+                start = System.nanoTime();
+            }
+            bytes += n;
+            long due = start + transferNanos(bytes, bytesPerSecond);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                Uninterruptibles.sleepUninterruptibly(wait, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                pace(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                pace(n);
+            }
+            return n;
+        }
+    }
+}
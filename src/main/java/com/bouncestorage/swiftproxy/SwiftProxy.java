@@ -24,9 +24,14 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.ws.rs.ext.RuntimeDelegate;
 
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectionProbe;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.filter.LoggingFilter;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
@@ -35,8 +40,57 @@ import org.slf4j.LoggerFactory;
 
 public final class SwiftProxy {
     public static final String PROPERTY_ENDPOINT = "swiftproxy.endpoint";
+    public static final String PROPERTY_READ_AHEAD_SEGMENTS = "swiftproxy.read-ahead.segments";
+    public static final String PROPERTY_READ_AHEAD_THREADS = "swiftproxy.read-ahead.threads";
+    public static final String PROPERTY_READ_AHEAD_MEMORY_BUDGET = "swiftproxy.read-ahead.memory-budget";
+    public static final String PROPERTY_BACKEND_THREADS = "swiftproxy.backend-executor.threads";
+    public static final String PROPERTY_BACKEND_QUEUE_SIZE = "swiftproxy.backend-executor.queue-size";
+    public static final String PROPERTY_BACKEND_REQUEST_CONCURRENCY =
+            "swiftproxy.backend-executor.request-concurrency";
+    public static final String PROPERTY_BACKEND_VIRTUAL_THREADS = "swiftproxy.backend-executor.virtual-threads";
+    public static final String PROPERTY_METADATA_CACHE_SIZE = "swiftproxy.metadata-cache.size";
+    public static final String PROPERTY_METADATA_CACHE_TTL = "swiftproxy.metadata-cache.ttl";
+    public static final String PROPERTY_METADATA_CACHE_NEGATIVE = "swiftproxy.metadata-cache.negative";
+    public static final String PROPERTY_DLO_CACHE_SIZE = "swiftproxy.dlo-cache.size";
+    public static final String PROPERTY_DLO_CACHE_TTL = "swiftproxy.dlo-cache.ttl";
+    public static final String PROPERTY_SLO_CACHE_SEGMENTS = "swiftproxy.slo-cache.segments";
+    public static final String PROPERTY_CONTEXT_POOL_SIZE = "swiftproxy.context-pool.size";
+    public static final String PROPERTY_CONTEXT_POOL_IDLE_TIMEOUT = "swiftproxy.context-pool.idle-timeout";
+    public static final String PROPERTY_TRANSFER_THREADS = "swiftproxy.transfer-executor.threads";
+    public static final String PROPERTY_TRANSFER_MAX_SUSPENDED = "swiftproxy.transfer-executor.max-suspended";
+    public static final String PROPERTY_TRANSFER_TIMEOUT = "swiftproxy.transfer-executor.timeout";
+    public static final String PROPERTY_MULTIPART_UPLOAD_THRESHOLD = "swiftproxy.multipart-upload.threshold";
+    public static final String PROPERTY_MULTIPART_UPLOAD_PART_SIZE = "swiftproxy.multipart-upload.part-size";
+    public static final String PROPERTY_MULTIPART_UPLOAD_CONCURRENCY = "swiftproxy.multipart-upload.concurrency";
+    public static final String PROPERTY_MULTIPART_UPLOAD_MEMORY_BUDGET = "swiftproxy.multipart-upload.memory-budget";
+    public static final String PROPERTY_MULTIPART_UPLOAD_BUFFER_TIMEOUT = "swiftproxy.multipart-upload.buffer-timeout";
+    public static final String PROPERTY_MULTIPART_UPLOAD_LIST_MD5 = "swiftproxy.multipart-upload.list-md5";
+    public static final String PROPERTY_AUTH_TOKEN_SECRET = "swiftproxy.auth.token-secret";
+    public static final String PROPERTY_VIRTUAL_THREADS = "swiftproxy.virtual-threads";
+    public static final String PROPERTY_VIRTUAL_THREADS_REPORT_PINNING = "swiftproxy.virtual-threads.report-pinning";
+    public static final String PROPERTY_SERVER_SELECTOR_THREADS = "swiftproxy.server.selector-threads";
+    public static final String PROPERTY_SERVER_WORKER_THREADS = "swiftproxy.server.worker-threads";
+    public static final String PROPERTY_SERVER_WORKER_QUEUE_LIMIT = "swiftproxy.server.worker-queue-limit";
+    public static final String PROPERTY_SERVER_KEEP_ALIVE_TIMEOUT = "swiftproxy.server.keep-alive-timeout";
+    public static final String PROPERTY_SERVER_KEEP_ALIVE_MAX_REQUESTS = "swiftproxy.server.keep-alive-max-requests";
+    public static final String PROPERTY_SERVER_READ_TIMEOUT = "swiftproxy.server.read-timeout";
+    public static final String PROPERTY_SERVER_WRITE_TIMEOUT = "swiftproxy.server.write-timeout";
+    public static final String PROPERTY_SERVER_READ_BUFFER_SIZE = "swiftproxy.server.read-buffer-size";
+    public static final String PROPERTY_SERVER_WRITE_BUFFER_SIZE = "swiftproxy.server.write-buffer-size";
+    public static final String PROPERTY_SERVER_MAX_HEADER_SIZE = "swiftproxy.server.max-header-size";
+    public static final String PROPERTY_SERVER_MEMORY_MANAGER = "swiftproxy.server.memory-manager";
+    public static final String PROPERTY_SENDFILE = "swiftproxy.sendfile";
+    public static final String PROPERTY_METRICS_JMX = "swiftproxy.metrics.jmx";
+    public static final String PROPERTY_BACKEND_CALLS_HEADER = "swiftproxy.debug.backend-calls-header";
+    public static final String PROPERTY_SLOW_REQUEST_THRESHOLD = "swiftproxy.debug.slow-request-threshold";
+    public static final String PROPERTY_SIMULATE_LATENCY = "swiftproxy.simulate.latency";
+    public static final String PROPERTY_SIMULATE_BANDWIDTH = "swiftproxy.simulate.bandwidth";
+    public static final String PROPERTY_SIMULATE_ERROR_RATE = "swiftproxy.simulate.error-rate";
+    public static final String PROPERTY_SIMULATE_THROTTLE_RATE = "swiftproxy.simulate.throttle-rate";
     private Logger logger = LoggerFactory.getLogger(getClass());
     private HttpServer server;
+    private ExecutorService virtualWorkers;
+    private final boolean jmx;
     private URI endpoint;
     private final BounceResourceConfig rc;
 
@@ -48,9 +102,32 @@ public final class SwiftProxy {
             rc.register(new LoggingFilter(java.util.logging.Logger.getGlobal(), false));
         }
         server = GrizzlyHttpServerFactory.createHttpServer(endpoint, rc, false);
+        LongAdder bytesIn = rc.getMetrics().counter("received_bytes_total",
+                "Bytes read from client connections, including headers.", "");
+        LongAdder bytesOut = rc.getMetrics().counter("sent_bytes_total",
+                "Bytes written to client connections, including headers.", "");
         server.getListeners().forEach(listener -> {
             listener.registerAddOn(new ContentLengthAddOn());
+            listener.getTransport().getConnectionMonitoringConfig().addProbes(new ConnectionProbe.Adapter() {
+                @Override
+                public void onReadEvent(Connection connection, Buffer data, int size) {
+                    bytesIn.add(size);
+                }
+
+                @Override
+                public void onWriteEvent(Connection connection, Buffer data, long size) {
+                    bytesOut.add(size);
+                }
+            });
         });
+        jmx = Utils.getBooleanProperty(properties, PROPERTY_METRICS_JMX, true);
+        if (Utils.getBooleanProperty(properties, PROPERTY_VIRTUAL_THREADS, false)) {
+            virtualWorkers = VirtualThreads.newExecutor("swiftproxy-worker-");
+            if (virtualWorkers == null) {
+                logger.warn("virtual threads are not supported by this JVM, using the Grizzly worker pool");
+            }
+        }
+        rc.setServerSettings(ServerSettings.apply(server, properties, virtualWorkers));
 
         // allow HTTP DELETE to have payload for multi-object delete
         server.getServerConfiguration().setAllowPayloadForUndefinedHttpMethods(true);
@@ -71,10 +148,18 @@ public final class SwiftProxy {
         endpoint = new URI(endpoint.getScheme(), endpoint.getUserInfo(), endpoint.getHost(),
                 getPort(), endpoint.getPath(), endpoint.getQuery(), endpoint.getFragment());
         rc.setEndPoint(endpoint);
+        if (jmx) {
+            rc.getMetrics().registerMBean("port=" + getPort());
+        }
     }
 
     public void stop() {
+        rc.getMetrics().unregisterMBean();
         server.shutdownNow();
+        if (virtualWorkers != null) {
+            virtualWorkers.shutdownNow();
+        }
+        rc.shutdown();
     }
 
     public int getPort() {
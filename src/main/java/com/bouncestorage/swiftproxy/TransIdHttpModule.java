@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.lang.reflect.Method;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.matcher.Matcher;
+import com.google.inject.matcher.Matchers;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.jclouds.http.HttpCommand;
+import org.jclouds.http.HttpCommandExecutorService;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+
+/**
+ * Sends the transaction id of the current request, if any, to the backend as {@code X-Trans-Id} so that backend logs
+ * can be matched with the proxy's. The header is added around whichever HTTP executor the provider binds, e.g. the
+ * OkHttp one some APIs default to, instead of replacing it.
+ */
+final class TransIdHttpModule extends AbstractModule {
+    @Override
+    protected void configure() {
+        bindInterceptor(Matchers.subclassesOf(HttpCommandExecutorService.class), new InvokeMatcher(),
+                new TransIdInterceptor());
+    }
+
+    /** {@link HttpCommandExecutorService#invoke}, which every request to the backend goes through. */
+    private static final class InvokeMatcher implements Matcher<Method> {
+        @Override
+        public boolean matches(Method method) {
+            return !method.isSynthetic() && method.getName().equals("invoke") &&
+                    method.getParameterCount() == 1 && method.getParameterTypes()[0] == HttpCommand.class;
+        }
+    }
+
+    private static final class TransIdInterceptor implements MethodInterceptor {
+        private final HttpRequestFilter filter = new TransIdFilter();
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            HttpCommand command = (HttpCommand) invocation.getArguments()[0];
+            command.setCurrentRequest(filter.filter(command.getCurrentRequest()));
+            return invocation.proceed();
+        }
+    }
+
+    static final class TransIdFilter implements HttpRequestFilter {
+        @Override
+        public HttpRequest filter(HttpRequest request) {
+            RequestTrace trace = RequestTrace.current();
+            if (trace == null) {
+                return request;
+            }
+            return request.toBuilder().replaceHeader(RequestMetrics.TRANS_ID_HEADER, trace.getTransId()).build();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs suspended object requests, e.g. GET and PUT, off the HTTP worker threads so that slow clients streaming
+ * large objects cannot starve the requests that only touch metadata. At most {@code maxSuspended} requests are
+ * suspended at once, beyond that requests are answered with 503. A request that does not start within the timeout
+ * is answered with 503 as well; once it has started, the transfer itself is not bounded. With virtual threads every
+ * admitted request gets its own thread, so only {@code maxSuspended} applies.
+ */
+public final class TransferExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(TransferExecutor.class);
+    private static final int DEFAULT_THREADS = 256;
+    private static final int DEFAULT_MAX_SUSPENDED = 1024;
+    private static final long DEFAULT_TIMEOUT = 60;
+
+    private final ExecutorService executor;
+    private final Semaphore suspended;
+    private final int maxSuspended;
+    private final long timeoutSeconds;
+    private final boolean virtualThreads;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    TransferExecutor(int threads, int maxSuspended, long timeoutSeconds, boolean useVirtualThreads) {
+        if (threads <= 0 || maxSuspended < threads || timeoutSeconds < 0) {
+            throw new IllegalArgumentException(String.format("invalid transfer executor settings: %d threads, " +
+                    "%d suspended requests, %d seconds", threads, maxSuspended, timeoutSeconds));
+        }
+        this.suspended = new Semaphore(maxSuspended);
+        this.maxSuspended = maxSuspended;
+        this.timeoutSeconds = timeoutSeconds;
+
+        ExecutorService virtualExecutor = useVirtualThreads ? VirtualThreads.newExecutor("swiftproxy-transfer-") :
+                null;
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            virtualThreads = true;
+        } else {
+            if (useVirtualThreads) {
+                logger.warn("virtual threads are not supported by this JVM, using a pool of {} threads", threads);
+            }
+            // requests beyond the running ones wait in the queue, the semaphore keeps it bounded
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("swiftproxy-transfer-%d")
+                            .setDaemon(true)
+                            .build());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            virtualThreads = false;
+        }
+    }
+
+    static TransferExecutor fromProperties(Properties properties) {
+        return new TransferExecutor(
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_TRANSFER_THREADS, DEFAULT_THREADS),
+                Utils.getIntProperty(properties, SwiftProxy.PROPERTY_TRANSFER_MAX_SUSPENDED, DEFAULT_MAX_SUSPENDED),
+                Utils.getLongProperty(properties, SwiftProxy.PROPERTY_TRANSFER_TIMEOUT, DEFAULT_TIMEOUT),
+                Utils.getBooleanProperty(properties, SwiftProxy.PROPERTY_VIRTUAL_THREADS, false));
+    }
+
+    /**
+     * Run {@code method} on a transfer thread and resume {@code asyncResponse} with its result. The response entity
+     * is written on the same thread, so the thread is held until the transfer completes.
+     */
+    public void resume(AsyncResponse asyncResponse, Supplier<Response> method) {
+        if (!suspended.tryAcquire()) {
+            rejected.increment();
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+            return;
+        }
+
+        RequestTrace trace = RequestTrace.current();
+        AtomicBoolean started = new AtomicBoolean();
+        if (timeoutSeconds > 0) {
+            asyncResponse.setTimeoutHandler(response -> {
+                if (started.compareAndSet(false, true)) {
+                    timedOut.increment();
+                    response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+                } else {
+                    // still reading the request body or waiting for the backend, keep waiting
+                    response.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+                }
+            });
+            asyncResponse.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!started.compareAndSet(false, true)) {
+                        return;
+                    }
+                    active.incrementAndGet();
+                    RequestTrace previous = RequestTrace.setCurrent(trace);
+                    try {
+                        asyncResponse.resume(method.get());
+                    } catch (Throwable t) {
+                        asyncResponse.resume(t);
+                    } finally {
+                        RequestTrace.setCurrent(previous);
+                        active.decrementAndGet();
+                    }
+                } finally {
+                    suspended.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            suspended.release();
+            rejected.increment();
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /** Number of requests currently running on a transfer thread. */
+    public int getActive() {
+        return active.get();
+    }
+
+    /** Number of requests waiting for or running on a transfer thread. */
+    public int getSuspended() {
+        return maxSuspended - suspended.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -28,10 +28,13 @@ import org.jclouds.Constants;
 import org.jclouds.ContextBuilder;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.domain.internal.BlobImpl;
 import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.io.Payload;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
 
@@ -62,6 +65,21 @@ public final class Utils {
         return context.getBlobStore();
     }
 
+    public static int getIntProperty(@Nullable Properties properties, String name, int defaultValue) {
+        String value = properties == null ? null : properties.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static boolean getBooleanProperty(@Nullable Properties properties, String name, boolean defaultValue) {
+        String value = properties == null ? null : properties.getProperty(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public static long getLongProperty(@Nullable Properties properties, String name, long defaultValue) {
+        String value = properties == null ? null : properties.getProperty(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
     private static class CrawlBlobStoreIterable
             implements Iterable<StorageMetadata> {
         private final BlobStore blobStore;
@@ -151,4 +169,15 @@ public final class Utils {
     public static boolean eTagsEqual(@Nullable String eTag1, @Nullable String eTag2) {
         return Objects.equals(trimETag(eTag1), trimETag(eTag2));
     }
+
+    /**
+     * Return a copy of {@code blob} with {@code payload}, which usually wraps the payload of {@code blob}. Setting it
+     * on {@code blob} itself would release the payload being replaced, closing the stream a ranged GET reads from.
+     */
+    public static Blob withPayload(Blob blob, Payload payload) {
+        BlobImpl copy = new BlobImpl(blob.getMetadata());
+        copy.setAllHeaders(blob.getAllHeaders());
+        copy.setPayload(payload);
+        return copy;
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to the virtual thread and JFR APIs of JDK 21 and later. The proxy is built for Java 8, so these are looked
+ * up reflectively and every method degrades to {@code null} on older JVMs.
+ */
+final class VirtualThreads {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private VirtualThreads() {
+        // Hide the constructor for a Utils class
+    }
+
+    /** Return an executor that starts a virtual thread named {@code prefix} and a counter per task, or null. */
+    static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the JFR events emitted when a virtual thread blocks while pinned to its carrier, e.g. inside a
+     * {@code synchronized} block, which is what limits the concurrency of virtual threads.
+     */
+    static final class PinningMonitor implements AutoCloseable {
+        private final LongAdder pinned = new LongAdder();
+        private final Class<?> streamClass;
+        private final Object stream;
+
+        private PinningMonitor(Class<?> streamClass, Object stream) {
+            this.streamClass = streamClass;
+            this.stream = stream;
+        }
+
+        /** Start recording, or return null if the JVM has no JFR event streaming. */
+        static PinningMonitor start() {
+            try {
+                Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+                Object stream = streamClass.getConstructor().newInstance();
+                PinningMonitor monitor = new PinningMonitor(streamClass, stream);
+                Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+                Class.forName("jdk.jfr.EventSettings").getMethod("withStackTrace").invoke(settings);
+                Consumer<Object> onEvent = monitor::onPinned;
+                streamClass.getMethod("onEvent", String.class, Consumer.class)
+                        .invoke(stream, PINNED_EVENT, onEvent);
+                streamClass.getMethod("startAsync").invoke(stream);
+                return monitor;
+            } catch (ReflectiveOperationException e) {
+                logger.warn("cannot record virtual thread pinning: {}", e.toString());
+                return null;
+            }
+        }
+
+        private void onPinned(Object event) {
+            pinned.increment();
+            logger.warn("virtual thread pinned: {}", event);
+        }
+
+        /** Number of times a virtual thread blocked while pinned since recording started. */
+        long getPinnedCount() {
+            return pinned.sum();
+        }
+
+        @Override
+        public void close() {
+            try {
+                streamClass.getMethod("close").invoke(stream);
+            } catch (ReflectiveOperationException e) {
+                logger.debug("error closing recording stream", e);
+            }
+        }
+    }
+}
@@ -23,12 +23,19 @@ import static com.google.common.base.Throwables.propagate;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.inject.Singleton;
@@ -48,7 +55,6 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
@@ -56,9 +62,10 @@ import javax.xml.bind.annotation.XmlType;
 import com.bouncestorage.swiftproxy.BlobStoreResource;
 import com.bouncestorage.swiftproxy.BounceResourceConfig;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.net.PercentEscaper;
 
 import org.glassfish.grizzly.http.server.Request;
@@ -70,6 +77,10 @@ import org.jclouds.blobstore.domain.StorageMetadata;
 @Path("/v1/{account}")
 public final class AccountResource extends BlobStoreResource {
     private static final PercentEscaper BULK_DELETE_ESCAPER = new PercentEscaper("-_.~:/", false);
+    // S3 multi-object delete accepts at most 1000 keys per request
+    private static final int BULK_DELETE_BATCH_SIZE = 1000;
+    // APIs whose BlobStore.removeBlobs issues a native multi-object delete instead of one call per blob
+    private static final Set<String> MULTI_DELETE_APIS = ImmutableSet.of("s3", "openstack-swift");
 
     @GET
     public Response getAccount(@NotNull @PathParam("account") String account,
@@ -114,15 +125,11 @@ public final class AccountResource extends BlobStoreResource {
             }
         });
 
-        Account root = new Account();
-        root.name = account;
-        root.container = entries;
-        return output(root, entries, formatType)
+        return output("account", account, "container", entries.iterator(), formatType)
                 .header("X-Account-Container-Count", count)
                 .header("X-Account-Object-Count", -1)
                 .header("X-Account-Bytes-Used", -1)
                 .header("X-Timestamp", -1)
-                .header("X-Trans-Id", -1)
                 .header("Accept-Ranges", "bytes")
                 .build();
     }
@@ -136,7 +143,6 @@ public final class AccountResource extends BlobStoreResource {
                 .header("X-Account-Object-Count", -1)
                 .header("X-Account-Bytes-Used", -1)
                 .header("X-Timestamp", -1)
-                .header("X-Trans-Id", -1)
                 .header("Accept-Ranges", "bytes")
                 .build();
     }
@@ -147,7 +153,7 @@ public final class AccountResource extends BlobStoreResource {
     public BulkDeleteResult bulkDeleteDelete(@NotNull @PathParam("account") String account,
                                              @QueryParam("bulk-delete") String bulkDelete,
                                              @HeaderParam("X-Auth-Token") String authToken,
-                                             @Context Request request) throws JsonProcessingException {
+                                             @Context Request request) {
         return bulkDelete(account, bulkDelete, authToken, request);
     }
 
@@ -157,7 +163,7 @@ public final class AccountResource extends BlobStoreResource {
     public BulkDeleteResult bulkDelete(@NotNull @PathParam("account") String account,
                                        @QueryParam("bulk-delete") String bulkDelete,
                                        @HeaderParam("X-Auth-Token") String authToken,
-                                       @Context Request request) throws JsonProcessingException {
+                                       @Context Request request) {
         if (bulkDelete == null) {
             // TODO: Currently this will match the account delete request as well, which we do not implement
             throw new WebApplicationException(Response.Status.NOT_IMPLEMENTED);
@@ -168,68 +174,195 @@ public final class AccountResource extends BlobStoreResource {
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
 
-        String line;
-        ArrayList<String> objects = new ArrayList<>();
-
         boolean isTransient = blobStore.getContext().unwrap().getId().equals("transient");
+        String api = blobStore.getContext().unwrap().getProviderMetadata().getApiMetadata().getId();
+        int batchSize = MULTI_DELETE_APIS.contains(api) ? BULK_DELETE_BATCH_SIZE : 1;
+
+        BulkDeleteResult result = new BulkDeleteResult();
+        Map<String, Boolean> existingContainers = new ConcurrentHashMap<>();
         try (BufferedReader in = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
-            while ((line = in.readLine()) != null) {
-                if (isTransient) {
-                    // jclouds does not escape things correctly
-                    line = BULK_DELETE_ESCAPER.escape(URLDecoder.decode(line, "UTF-8"));
+            BulkDeleteReader reader = new BulkDeleteReader(in, isTransient, batchSize);
+            do {
+                // objects are deleted as their lines arrive, a container is only deleted once the objects
+                // listed before it are gone
+                getBackendExecutor().forEach(reader.nextObjectBatches(),
+                        batch -> deleteObjects(blobStore, batch, existingContainers, result));
+                String container = reader.takeContainer();
+                if (container != null) {
+                    deleteContainer(blobStore, container, existingContainers, result);
                 }
-                objects.add(line);
-            }
+            } while (!reader.isFinished());
         } catch (IOException e) {
             throw propagate(e);
+        } catch (UncheckedIOException e) {
+            throw propagate(e.getCause());
         }
 
-        BulkDeleteResult result = new BulkDeleteResult();
-        for (String objectContainer : objects) {
-            try {
-                if (objectContainer.startsWith("/")) {
-                    objectContainer = objectContainer.substring(1);
+        if (result.errors.isEmpty()) {
+            result.responseStatus = Response.Status.OK.toString();
+        } else {
+            // as in Swift, the request itself succeeds and the body reports failures of the backend as such,
+            // otherwise the request was at fault
+            Response.Status status = result.backendFailed ? Response.Status.BAD_GATEWAY :
+                    Response.Status.BAD_REQUEST;
+            result.responseStatus = status.toString();
+        }
+        return result;
+    }
+
+    private void deleteObjects(BlobStore blobStore, BulkDeleteBatch batch, Map<String, Boolean> existingContainers,
+                               BulkDeleteResult result) {
+        try {
+            Boolean exists = existingContainers.get(batch.container);
+            if (exists == null) {
+                exists = blobStore.containerExists(batch.container);
+                existingContainers.put(batch.container, exists);
+            }
+            if (!exists) {
+                result.add(0, batch.objects.size(), Collections.emptyList());
+            } else if (batch.objects.size() == 1) {
+                // removeBlob succeeds for missing objects, so only the lookup tells them apart
+                String object = batch.objects.get(0);
+                if (blobStore.blobExists(batch.container, object)) {
+                    blobStore.removeBlob(batch.container, object);
+                    result.add(1, 0, Collections.emptyList());
+                } else {
+                    result.add(0, 1, Collections.emptyList());
                 }
-                int separatorIndex = objectContainer.indexOf('/');
-                if (separatorIndex < 0) {
-                    blobStore.deleteContainer(objectContainer.substring(1));
-                    result.numberDeleted += 1;
-                    continue;
+            } else {
+                // multi-object deletes do not report which objects were missing, so all of them count as deleted
+                blobStore.removeBlobs(batch.container, batch.objects);
+                result.add(batch.objects.size(), 0, Collections.emptyList());
+            }
+        } catch (ContainerNotFoundException e) {
+            result.add(0, batch.objects.size(), Collections.emptyList());
+        } catch (Exception e) {
+            logger.error("bulk delete from {} failed", batch.container, e);
+            result.backendFailed = true;
+            result.add(0, 0, batch.objects.stream()
+                    .map(object -> BulkDeleteResult.error(batch.container + "/" + object,
+                            Response.Status.BAD_GATEWAY))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    private void deleteContainer(BlobStore blobStore, String container, Map<String, Boolean> existingContainers,
+                                 BulkDeleteResult result) {
+        try {
+            Boolean exists = existingContainers.get(container);
+            if (exists == null) {
+                exists = blobStore.containerExists(container);
+            }
+            // deleteContainerIfEmpty also succeeds for a missing container, which must count as not found
+            if (!exists) {
+                result.add(0, 1, Collections.emptyList());
+            } else if (blobStore.deleteContainerIfEmpty(container)) {
+                // unlike deleteContainer, this leaves a container that still has objects alone
+                existingContainers.put(container, false);
+                result.add(1, 0, Collections.emptyList());
+            } else {
+                result.add(0, 0, Collections.singletonList(
+                        BulkDeleteResult.error(container, Response.Status.CONFLICT)));
+            }
+        } catch (ContainerNotFoundException e) {
+            result.add(0, 1, Collections.emptyList());
+        } catch (Exception e) {
+            logger.error("bulk delete of {} failed", container, e);
+            result.backendFailed = true;
+            result.add(0, 0, Collections.singletonList(
+                    BulkDeleteResult.error(container, Response.Status.BAD_GATEWAY)));
+        }
+    }
+
+    /**
+     * Reads the lines of a bulk delete request lazily and groups consecutive objects of a container into batches.
+     */
+    private static final class BulkDeleteReader {
+        private final BufferedReader in;
+        private final boolean isTransient;
+        private final int batchSize;
+        private String pendingLine;
+        private String pendingContainer;
+        private boolean finished;
+
+        BulkDeleteReader(BufferedReader in, boolean isTransient, int batchSize) {
+            this.in = requireNonNull(in);
+            this.isTransient = isTransient;
+            this.batchSize = batchSize;
+        }
+
+        /** Batches of objects up to the next container line or the end of the request. */
+        Iterable<BulkDeleteBatch> nextObjectBatches() {
+            return () -> new AbstractIterator<BulkDeleteBatch>() {
+                @Override
+                protected BulkDeleteBatch computeNext() {
+                    BulkDeleteBatch batch = null;
+                    while (pendingContainer == null && !finished) {
+                        String line = pendingLine != null ? pendingLine : readLine();
+                        pendingLine = null;
+                        if (line == null) {
+                            finished = true;
+                            break;
+                        }
+                        if (line.startsWith("/")) {
+                            line = line.substring(1);
+                        }
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        int separatorIndex = line.indexOf('/');
+                        if (separatorIndex < 0) {
+                            pendingContainer = line;
+                            break;
+                        }
+                        String container = line.substring(0, separatorIndex);
+                        if (batch == null) {
+                            batch = new BulkDeleteBatch(container);
+                        } else if (!batch.container.equals(container)) {
+                            pendingLine = line;
+                            break;
+                        }
+                        batch.objects.add(line.substring(separatorIndex + 1));
+                        if (batch.objects.size() >= batchSize) {
+                            break;
+                        }
+                    }
+                    return batch != null ? batch : endOfData();
                 }
-                String container = objectContainer.substring(0, separatorIndex);
-                String object = objectContainer.substring(separatorIndex + 1);
+            };
+        }
 
-                if (!blobStore.blobExists(container, object)) {
-                    result.numberNotFound += 1;
-                } else {
-                    blobStore.removeBlob(container, object);
-                    result.numberDeleted += 1;
+        private String readLine() {
+            try {
+                String line = in.readLine();
+                if (line != null && isTransient) {
+                    // jclouds does not escape things correctly
+                    line = BULK_DELETE_ESCAPER.escape(URLDecoder.decode(line, "UTF-8"));
                 }
-            } catch (ContainerNotFoundException e) {
-                result.numberNotFound += 1;
-            } catch (Exception e) {
-                e.printStackTrace();
-                result.errors.add(objectContainer);
+                return line;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
 
-        if (result.errors.isEmpty()) {
-            result.responseStatus = Response.Status.OK.toString();
-            return result;
-        } else {
-            ObjectMapper mapper = new ObjectMapper();
-            result.responseStatus = Response.Status.BAD_GATEWAY.toString();
-            throw new WebApplicationException(mapper.writeValueAsString(result), Response.Status.BAD_GATEWAY);
+        String takeContainer() {
+            String container = pendingContainer;
+            pendingContainer = null;
+            return container;
+        }
+
+        boolean isFinished() {
+            return finished && pendingContainer == null;
         }
     }
 
-    @XmlRootElement(name = "account")
-    @XmlType
-    static class Account {
-        @XmlElement
-        List<ContainerEntry> container;
-        @XmlAttribute
-        private String name;
+    private static final class BulkDeleteBatch {
+        private final String container;
+        private final List<String> objects = new ArrayList<>();
+
+        BulkDeleteBatch(String container) {
+            this.container = requireNonNull(container);
+        }
     }
 
     @XmlRootElement(name = "container")
@@ -276,17 +409,30 @@ public final class AccountResource extends BlobStoreResource {
     static class BulkDeleteResult {
         @JsonProperty("Response Status")
         String responseStatus;
+        /** Pairs of the name that could not be deleted and the status why, e.g. {@code 409 Conflict}. */
         @JsonProperty("Errors")
-        ArrayList<String> errors;
+        ArrayList<List<String>> errors;
         @JsonProperty("Number Deleted")
         int numberDeleted;
         @JsonProperty("Number Not Found")
         int numberNotFound;
+        @JsonIgnore
+        volatile boolean backendFailed;
 
         BulkDeleteResult() {
             errors = new ArrayList<>();
             numberDeleted = 0;
             numberNotFound = 0;
         }
+
+        synchronized void add(int deleted, int notFound, Collection<List<String>> failed) {
+            numberDeleted += deleted;
+            numberNotFound += notFound;
+            errors.addAll(failed);
+        }
+
+        static List<String> error(String name, Response.Status status) {
+            return Arrays.asList(name, status.getStatusCode() + " " + status.getReasonPhrase());
+        }
     }
 }
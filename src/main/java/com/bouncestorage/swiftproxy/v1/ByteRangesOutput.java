@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static java.util.Objects.requireNonNull;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a {@code multipart/byteranges} body for a multi-range GET. The backend reads of the next few ranges are
+ * started concurrently while a part is written, and every part is copied straight from its backend stream.
+ */
+final class ByteRangesOutput implements StreamingOutput {
+    private static final Logger logger = LoggerFactory.getLogger(ByteRangesOutput.class);
+
+    /** Open the bytes {@code start} to {@code end}, end exclusive, of the object. */
+    interface RangeOpener {
+        InputStream open(long start, long end) throws IOException;
+    }
+
+    private final List<long[]> ranges;
+    private final long totalSize;
+    private final String contentType;
+    private final String boundary = RandomStringUtils.randomAlphanumeric(32);
+    private final RangeOpener opener;
+    private final Executor executor;
+    private final int window;
+
+    /**
+     * @param ranges {start, end} pairs, end exclusive, as resolved against the object
+     * @param window number of ranges opened ahead of the one being written
+     */
+    ByteRangesOutput(List<long[]> ranges, long totalSize, String contentType, RangeOpener opener,
+                     Executor executor, int window) {
+        this.ranges = requireNonNull(ranges);
+        this.totalSize = totalSize;
+        this.contentType = requireNonNull(contentType);
+        this.opener = requireNonNull(opener);
+        this.executor = requireNonNull(executor);
+        this.window = window;
+    }
+
+    MediaType getMediaType() {
+        return new MediaType("multipart", "byteranges", ImmutableMap.of("boundary", boundary));
+    }
+
+    long getContentLength() {
+        long length = closeDelimiter().length;
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            length += partHeader(i, range).length + range[1] - range[0];
+        }
+        return length;
+    }
+
+    private byte[] partHeader(int index, long[] range) {
+        return String.format("%s--%s\r\nContent-Type: %s\r\nContent-Range: bytes %d-%d/%d\r\n\r\n",
+                index == 0 ? "" : "\r\n", boundary, contentType, range[0], range[1] - 1, totalSize)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] closeDelimiter() {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        Deque<CompletableFuture<InputStream>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                while (next < ranges.size() && pending.size() <= window) {
+                    pending.add(open(ranges.get(next++)));
+                }
+                long[] range = ranges.get(i);
+                output.write(partHeader(i, range));
+                try (InputStream in = await(pending.poll())) {
+                    long copied = ByteStreams.copy(ByteStreams.limit(in, range[1] - range[0]), output);
+                    if (copied != range[1] - range[0]) {
+                        throw new IOException(String.format("range %d-%d ended after %d bytes",
+                                range[0], range[1] - 1, copied));
+                    }
+                }
+            }
+            output.write(closeDelimiter());
+            output.flush();
+        } finally {
+            pending.forEach(f -> f.thenAccept(ByteRangesOutput::closeQuietly));
+        }
+    }
+
+    private CompletableFuture<InputStream> open(long[] range) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return opener.open(range[0], range[1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // the pool is saturated, open the range when it is reached
+            CompletableFuture<InputStream> future = new CompletableFuture<>();
+            try {
+                future.complete(opener.open(range[0], range[1]));
+            } catch (IOException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+    }
+
+    private static InputStream await(CompletableFuture<InputStream> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw propagate(cause);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            logger.debug("error closing range", e);
+        }
+    }
+}
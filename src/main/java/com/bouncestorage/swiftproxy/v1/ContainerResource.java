@@ -25,9 +25,8 @@ import java.net.URLDecoder;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.Date;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import javax.validation.constraints.NotNull;
@@ -45,13 +44,13 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
 
 import com.bouncestorage.swiftproxy.BlobStoreResource;
 import com.bouncestorage.swiftproxy.BounceResourceConfig;
+import com.bouncestorage.swiftproxy.MultipartUploader;
 import com.bouncestorage.swiftproxy.Utils;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -61,6 +60,7 @@ import com.google.common.base.Strings;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
 import org.jclouds.blobstore.options.ListContainerOptions;
@@ -141,22 +141,33 @@ public final class ContainerResource extends BlobStoreResource {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
 
-        long objectCount = -1;
-        String provider = store.getContext().unwrap().getId();
-        if (provider.equals("transient") || provider.equals("openstack-swift")) {
-            objectCount = store.countBlobs(container);
-        }
-
-        return Response.status(Response.Status.NO_CONTENT).entity("")
-                .header("X-Container-Object-Count", objectCount)
+        Response.ResponseBuilder builder = Response.status(Response.Status.NO_CONTENT).entity("");
+        objectCount(store, container).ifPresent(count -> builder.header("X-Container-Object-Count", count));
+        return builder
                 .header("X-Container-Bytes-Used", 0)  // TODO: bogus value
                 .header("X-Versions-Location", "")
                 .header("X-Timestamp", -1)
-                .header("X-Trans-Id", -1)
                 .header("Accept-Ranges", "bytes")
                 .build();
     }
 
+    /**
+     * Number of objects in {@code container} if the backend can count them cheaply. Swift reports the count with
+     * the container, the transient backend is counted only if its objects fit in a single listing page.
+     */
+    private static Optional<Long> objectCount(BlobStore store, String container) {
+        String provider = store.getContext().unwrap().getId();
+        if (provider.equals("openstack-swift")) {
+            return Optional.of(store.countBlobs(container));
+        } else if (provider.equals("transient")) {
+            PageSet<? extends StorageMetadata> page = store.list(container, ListContainerOptions.Builder.recursive());
+            if (page.getNextMarker() == null) {
+                return Optional.of((long) page.size());
+            }
+        }
+        return Optional.empty();
+    }
+
     private String contentType(StorageMetadata meta) {
         if (meta instanceof BlobMetadata) {
             String contentType = ((BlobMetadata) meta).getContentMetadata().getContentType();
@@ -214,17 +225,19 @@ public final class ContainerResource extends BlobStoreResource {
         }
 
         logger.info("list: {} marker={} prefix={}", options, options.getMarker(), prefixParam);
-        List<ObjectEntry> entries = StreamSupport.stream(
+        boolean decodeNames = store.getContext().unwrap().getId().equals("transient");
+        MultipartUploader uploader = getConfig().getMultipartUploader();
+        Iterator<ObjectEntry> entries = StreamSupport.stream(
                 Utils.crawlBlobStore(store, container, options).spliterator(), false)
                 .peek(meta -> logger.debug("meta: {}", meta))
                 //.filter(meta -> (prefix == null || meta.getName().startsWith(prefix)))
                 //.filter(meta -> delimFilter(meta.getName(), delim_filter))
                 .filter(meta -> endMarker == null || meta.getName().compareTo(endMarker) < 0)
                 .limit(limit == null ? InfoResource.CONFIG.swift.container_listing_limit : limit)
-                .map(meta -> new ObjectEntry(meta.getName(), meta.getETag(),
-                        meta.getSize() == null ? 0 : meta.getSize(),
+                .map(meta -> new ObjectEntry(decodeNames ? decodeName(meta.getName()) : meta.getName(),
+                        uploader.listedETag(store, container, meta), meta.getSize() == null ? 0 : meta.getSize(),
                         contentType(meta), meta.getLastModified()))
-                .collect(Collectors.toList());
+                .iterator();
 
         MediaType formatType;
         if (format.isPresent()) {
@@ -235,39 +248,20 @@ public final class ContainerResource extends BlobStoreResource {
             formatType = MediaType.TEXT_PLAIN_TYPE;
         }
 
-        if (store.getContext().unwrap().getId().equals("transient")) {
-            entries.forEach(entry -> {
-                try {
-                    entry.name = URLDecoder.decode(entry.name, "UTF-8");
-                } catch (UnsupportedEncodingException e) {
-                    throw propagate(e);
-                }
-            });
-        }
-
-        // XXX semi-bogus value
-        long totalBytes = entries.stream().mapToLong(e -> e.bytes).sum();
-
-        ContainerRoot root = new ContainerRoot();
-        root.name = container;
-        root.object = entries;
-        return output(root, entries, formatType)
-                .header("X-Container-Object-Count", entries.size())
-                .header("X-Container-Bytes-Used", totalBytes)
+        // the listing is streamed and backends do not list totals with it, so the object count and bytes used are
+        // not known when the headers are sent and are left out, counting them would cost another round trip
+        return output("container", container, "object", entries, formatType)
                 .header("X-Timestamp", -1)
-                .header("X-Trans-Id", -1)
                 .header("Accept-Ranges", "bytes")
                 .build();
-
     }
 
-    @XmlRootElement(name = "container")
-    @XmlType
-    static class ContainerRoot {
-        @XmlElement
-        List<ObjectEntry> object;
-        @XmlAttribute
-        private String name;
+    private static String decodeName(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw propagate(e);
+        }
     }
 
     @XmlRootElement(name = "object")
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * A response body that is a region of a local file, the blob of a {@code filesystem} backend. It is written by
+ * {@link FileRegionWriter} on the Grizzly {@code response} of the request.
+ */
+final class FileRegion {
+    final Path path;
+    final long offset;
+    final long length;
+    final Response response;
+    /** Counts the regions actually sent with sendfile, rather than copied. */
+    final LongAdder sendfileCount;
+
+    FileRegion(Path path, long offset, long length, Response response, LongAdder sendfileCount) {
+        this.path = requireNonNull(path);
+        this.offset = offset;
+        this.length = length;
+        this.response = requireNonNull(response);
+        this.sendfileCount = requireNonNull(sendfileCount);
+    }
+}
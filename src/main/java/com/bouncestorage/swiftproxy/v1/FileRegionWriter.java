@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static com.google.common.base.Throwables.propagate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.RuntimeDelegate;
+
+import org.glassfish.grizzly.EmptyCompletionHandler;
+import org.glassfish.grizzly.WriteResult;
+import org.glassfish.grizzly.http.io.OutputBuffer;
+import org.glassfish.grizzly.http.server.Response;
+
+/**
+ * Writes a {@link FileRegion} with Grizzly's sendfile support, so that the kernel copies the data straight from the
+ * page cache to the socket. Jersey only hands the status and headers over to Grizzly once the body is written, but
+ * sendfile has to start before that, so the headers are set on the Grizzly response here. Jersey leaves a committed
+ * response alone. If sendfile is not available, e.g. with TLS, the region is copied through {@code output} instead.
+ */
+@Provider
+public final class FileRegionWriter implements MessageBodyWriter<FileRegion> {
+    @Override
+    public boolean isWriteable(Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType) {
+        return FileRegion.class.isAssignableFrom(aClass);
+    }
+
+    @Override
+    public long getSize(FileRegion region, Class<?> aClass, Type type, Annotation[] annotations,
+                        MediaType mediaType) {
+        return region.length;
+    }
+
+    @Override
+    public void writeTo(FileRegion region, Class<?> aClass, Type type, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> headers, OutputStream output)
+            throws IOException, WebApplicationException {
+        Response response = region.response;
+        OutputBuffer buffer = response.getOutputBuffer();
+        if (response.isCommitted() || !response.isSendFileEnabled()) {
+            transferTo(region, Channels.newChannel(output));
+            return;
+        }
+
+        for (Map.Entry<String, List<Object>> header : headers.entrySet()) {
+            for (Object value : header.getValue()) {
+                response.addHeader(header.getKey(), toString(value));
+            }
+        }
+
+        CompletableFuture<WriteResult> done = new CompletableFuture<>();
+        buffer.sendfile(region.path.toFile(), region.offset, region.length,
+                new EmptyCompletionHandler<WriteResult>() {
+                    @Override
+                    public void completed(WriteResult result) {
+                        done.complete(result);
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        done.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        done.completeExceptionally(new IOException("sendfile cancelled"));
+                    }
+                });
+        try {
+            done.get();
+            region.sendfileCount.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw propagate(e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toString(Object value) {
+        RuntimeDelegate.HeaderDelegate<Object> delegate = RuntimeDelegate.getInstance()
+                .createHeaderDelegate((Class<Object>) value.getClass());
+        return delegate == null ? value.toString() : delegate.toString(value);
+    }
+
+    private static void transferTo(FileRegion region, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(region.path, StandardOpenOption.READ)) {
+            long position = region.offset;
+            long end = region.offset + region.length;
+            while (position < end) {
+                long n = channel.transferTo(position, end - position, target);
+                if (n <= 0) {
+                    throw new IOException(String.format("%s ended after %d of %d bytes", region.path,
+                            position - region.offset, region.length));
+                }
+                position += n;
+            }
+        }
+    }
+}
@@ -16,21 +16,34 @@
 
 package com.bouncestorage.swiftproxy.v1;
 
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 
+import com.bouncestorage.swiftproxy.BounceResourceConfig;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableMap;
 
 @Path("/info")
 public final class InfoResource {
     public static final ServerConfiguration CONFIG = new ServerConfiguration();
 
+    @Context
+    private Application application;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public ServerConfiguration getInfo() {
-        return CONFIG;
+    public Map<String, Object> getInfo() {
+        return ImmutableMap.of(
+                "swift", CONFIG.swift,
+                "slo", CONFIG.slo,
+                "tempauth", CONFIG.tempauth,
+                "swiftproxy", ((BounceResourceConfig) application).getServerSettings());
     }
 
     //CHECKSTYLE:OFF
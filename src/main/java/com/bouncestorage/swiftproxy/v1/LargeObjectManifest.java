@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolved segments of a static or dynamic large object, with the offset of every segment in the combined object
+ * so that the segment holding a byte can be found with a binary search. Instances are shared between requests
+ * through the manifest caches and are never modified once built.
+ */
+public final class LargeObjectManifest {
+    private final List<ObjectResource.ManifestEntry> entries;
+    // offsets[i] is where segment i starts in the combined object, offsets[entries.size()] is its size
+    private final long[] offsets;
+    private final String eTag;
+
+    LargeObjectManifest(List<ObjectResource.ManifestEntry> entries, String eTag) {
+        ObjectResource.ManifestEntry[] array = entries.toArray(new ObjectResource.ManifestEntry[entries.size()]);
+        this.entries = Collections.unmodifiableList(Arrays.asList(array));
+        this.offsets = new long[array.length + 1];
+        for (int i = 0; i < array.length; i++) {
+            offsets[i + 1] = offsets[i] + array[i].size_bytes;
+        }
+        this.eTag = requireNonNull(eTag);
+    }
+
+    List<ObjectResource.ManifestEntry> getEntries() {
+        return entries;
+    }
+
+    ObjectResource.ManifestEntry getEntry(int index) {
+        return entries.get(index);
+    }
+
+    /** Offset of the first byte of segment {@code index} in the combined object. */
+    long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /** Index of the segment holding byte {@code offset} of the combined object. */
+    int findSegment(long offset) {
+        if (offset < 0 || offset >= getSize()) {
+            throw new IndexOutOfBoundsException("offset " + offset + " of " + getSize());
+        }
+        // last segment starting at or before offset, which skips over empty segments
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public long getSize() {
+        return offsets[entries.size()];
+    }
+
+    /** ETag of the combined object, quoted. */
+    public String getETag() {
+        return eTag;
+    }
+
+    public int getSegmentCount() {
+        return entries.size();
+    }
+}
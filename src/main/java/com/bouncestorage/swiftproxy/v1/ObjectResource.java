@@ -22,17 +22,20 @@ import static com.bouncestorage.swiftproxy.Utils.eTagsEqual;
 import static com.google.common.base.Throwables.propagate;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -42,6 +45,9 @@ import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -55,11 +61,15 @@ import javax.ws.rs.Encoded;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
 import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
@@ -67,12 +77,23 @@ import javax.ws.rs.core.Response;
 
 import com.bouncestorage.swiftproxy.BlobStoreResource;
 import com.bouncestorage.swiftproxy.COPY;
+import com.bouncestorage.swiftproxy.Metrics;
+import com.bouncestorage.swiftproxy.MultipartUploader;
+import com.bouncestorage.swiftproxy.SegmentReadAhead;
 import com.bouncestorage.swiftproxy.Utils;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
@@ -82,8 +103,8 @@ import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 
-import org.apache.commons.io.input.TeeInputStream;
 import org.glassfish.grizzly.http.server.Request;
 import org.glassfish.grizzly.utils.Pair;
 import org.jclouds.blobstore.BlobStore;
@@ -110,21 +131,29 @@ public final class ObjectResource extends BlobStoreResource {
     private static final String STATIC_OBJECT_MANIFEST = "x-static-large-object";
     private static final Set<String> RESERVED_METADATA = ImmutableSet.of(
             DYNAMIC_OBJECT_MANIFEST,
-            STATIC_OBJECT_MANIFEST
+            STATIC_OBJECT_MANIFEST,
+            MultipartUploader.ETAG_METADATA
     );
     private static final MediaType MANIFEST_CONTENT_TYPE = MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8");
     private static final Set<String> STD_BLOB_HEADERS = ImmutableSet.of(
             "Content-Range"
     );
-
-    private List<Pair<Long, Long>> parseRange(String range) {
+    /** As in Swift, a Range header with more ranges than this is ignored and the whole object returned. */
+    private static final int MAX_RANGES = 50;
+    /** As in Swift, ranges overlapping each other more often than this are answered with the whole object. */
+    private static final int MAX_RANGE_OVERLAPS = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader MANIFEST_READER = MAPPER.reader().forType(ManifestEntry.class);
+    private static final ObjectWriter MANIFEST_WRITER = MAPPER.writerFor(ManifestEntry[].class);
+
+    List<Pair<Long, Long>> parseRange(String range) {
         range = range.replaceAll(" ", "").toLowerCase();
         String bytesUnit = "bytes=";
         int idx = range.indexOf(bytesUnit);
         if (idx == 0) {
             String byteRangeSet = range.substring(bytesUnit.length());
             Iterator<Object> iter = Iterators.forEnumeration(new StringTokenizer(byteRangeSet, ","));
-            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false)
+            List<Pair<Long, Long>> ranges = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false)
                     .map(rangeSpec -> (String) rangeSpec)
                     .map(rangeSpec -> {
                         int dash = rangeSpec.indexOf("-");
@@ -139,6 +168,11 @@ public final class ObjectResource extends BlobStoreResource {
                     })
                     .peek(r -> logger.debug("parsed range {} {}", r.getFirst(), r.getSecond()))
                     .collect(Collectors.toList());
+            if (ranges.size() > MAX_RANGES) {
+                logger.debug("ignoring range header with {} ranges", ranges.size());
+                return null;
+            }
+            return ranges;
         } else {
             return null;
         }
@@ -169,26 +203,33 @@ public final class ObjectResource extends BlobStoreResource {
     }
 
     @GET
-    public Response getObject(@NotNull @PathParam("container") String container,
-                              @NotNull @Encoded @PathParam("object") String object,
-                              @NotNull @PathParam("account") String account,
-                              @HeaderParam("X-Auth-Token") String authToken,
-                              @HeaderParam("X-Newest") boolean newest,
-                              @QueryParam("signature") String signature,
-                              @QueryParam("expires") String expires,
-                              @QueryParam("multipart-manifest") String multiPartManifest,
-                              @HeaderParam("Range") String range,
-                              @HeaderParam("If-Match") String ifMatch,
-                              @HeaderParam("If-None-Match") String ifNoneMatch,
-                              @HeaderParam("If-Modified-Since") Date ifModifiedSince,
-                              @HeaderParam("If-Unmodified-Since") Date ifUnmodifiedSince) {
+    public void getObject(@Suspended AsyncResponse asyncResponse,
+                          @NotNull @PathParam("container") String container,
+                          @NotNull @Encoded @PathParam("object") String object,
+                          @NotNull @PathParam("account") String account,
+                          @HeaderParam("X-Auth-Token") String authToken,
+                          @HeaderParam("X-Newest") boolean newest,
+                          @QueryParam("signature") String signature,
+                          @QueryParam("expires") String expires,
+                          @QueryParam("multipart-manifest") String multiPartManifest,
+                          @HeaderParam("Range") String range,
+                          @HeaderParam("If-Match") String ifMatch,
+                          @HeaderParam("If-None-Match") String ifNoneMatch,
+                          @HeaderParam("If-Modified-Since") Date ifModifiedSince,
+                          @HeaderParam("If-Unmodified-Since") Date ifUnmodifiedSince,
+                          @Context Request request) {
+        getConfig().getTransferExecutor().resume(asyncResponse, () -> getObjectResponse(container, object, account,
+                authToken, newest, signature, expires, multiPartManifest, range, ifMatch, ifNoneMatch, ifModifiedSince,
+                ifUnmodifiedSince, request));
+    }
+
+    private Response getObjectResponse(String container, String object, String account, String authToken,
+                                       boolean newest, String signature, String expires, String multiPartManifest,
+                                       String range, String ifMatch, String ifNoneMatch, Date ifModifiedSince,
+                                       Date ifUnmodifiedSince, Request request) {
         logger.debug("GET account={} container={} object={}", account, container, object);
         BlobStore blobStore = getBlobStore(authToken).get(container, object);
 
-        if (!blobStore.containerExists(container)) {
-            return notFound();
-        }
-
         GetOptions options = new GetOptions();
         List<Pair<Long, Long>> ranges = null;
         if (range != null) {
@@ -211,7 +252,12 @@ public final class ObjectResource extends BlobStoreResource {
             options.ifUnmodifiedSince(ifUnmodifiedSince);
         }
 
-        return getObject(blobStore, container, object, options, ranges, "get".equals(multiPartManifest));
+        try {
+            return getObject(blobStore, container, object, options, ranges, "get".equals(multiPartManifest),
+                    request);
+        } catch (ContainerNotFoundException e) {
+            return notFound();
+        }
     }
 
     private Map<String, Object> blobGetStandardHeaders(Blob blob) {
@@ -246,18 +292,65 @@ public final class ObjectResource extends BlobStoreResource {
         return null;
     }
 
+    /**
+     * Answer a GET of {@code object}. If {@code request} is set, the body of a plain object of a {@code filesystem}
+     * backend may be sent with sendfile on its connection.
+     */
     private Response getObject(BlobStore blobStore, String container, String object,
-                               GetOptions options, List<Pair<Long, Long>> ranges, boolean multiPartManifest) {
+                               GetOptions options, List<Pair<Long, Long>> ranges, boolean multiPartManifest,
+                               Request request) {
         Blob blob = null;
-        BlobMetadata meta;
-        if (GetOptions.NONE.equals(options) || multiPartManifest) {
-            blob = blobStore.getBlob(container, object, options);
-            if (blob == null) {
+        BlobMetadata meta = null;
+        if (!multiPartManifest) {
+            // the manifest of a large object may not need to be fetched at all if its metadata is known
+            meta = getConfig().getMetadataCache().getCachedBlobMetadata(blobStore, container, object);
+            if (meta != null && !meta.getUserMetadata().containsKey(STATIC_OBJECT_MANIFEST) &&
+                    !meta.getUserMetadata().containsKey(DYNAMIC_OBJECT_MANIFEST)) {
+                meta = null;
+            }
+        }
+        // whether blob holds only the range or passed the conditions of the request
+        boolean partial = false;
+        if (meta != null) {
+            logger.debug("large object metadata is cached");
+        } else if (multiPartManifest || ranges == null || ranges.size() <= 1) {
+            // one round trip with the request's options, a large object is recognized by the returned metadata
+            try {
+                blob = blobStore.getBlob(container, object, options);
+            } catch (IllegalArgumentException | HttpResponseException e) {
+                meta = largeObjectMetadata(blobStore, container, object, multiPartManifest, e);
+                if (meta == null) {
+                    if (e instanceof IllegalArgumentException && ranges != null) {
+                        throw requestRangeNotSatisfiable();
+                    }
+                    throw e;
+                }
+            }
+            if (blob != null) {
+                meta = blob.getMetadata();
+                partial = !GetOptions.NONE.equals(options);
+            } else if (meta == null) {
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
-            meta = blob.getMetadata();
+            if (!multiPartManifest && !isLargeObject(meta) &&
+                    meta.getUserMetadata().containsKey(MultipartUploader.ETAG_METADATA)) {
+                // uploaded in parts, the backend compared the conditions with its own ETag rather than the MD5
+                Response cond = conditionalGetSatisified(options, objectETag(meta), meta.getLastModified());
+                if (cond != null) {
+                    discard(blob);
+                    return cond;
+                }
+                if (blob == null) {
+                    blob = blobStore.getBlob(container, object,
+                            ranges == null ? GetOptions.NONE : addRanges(new GetOptions(), ranges));
+                    if (blob == null) {
+                        return Response.status(Response.Status.NOT_FOUND).build();
+                    }
+                    meta = blob.getMetadata();
+                }
+            }
         } else {
-            logger.debug("range get, check to see if object is a large object");
+            logger.debug("multi-range get, check to see if object is a large object");
             meta = blobStore.blobMetadata(container, object);
             if (meta == null) {
                 return Response.status(Response.Status.NOT_FOUND).build();
@@ -268,12 +361,16 @@ public final class ObjectResource extends BlobStoreResource {
         if (meta.getUserMetadata().containsKey(DYNAMIC_OBJECT_MANIFEST)) {
             isMultiPartManifest = true;
             if (!multiPartManifest) {
+                discard(blob);
                 return getDloObject(blobStore, meta, options, ranges);
             }
         } else if (meta.getUserMetadata().containsKey(STATIC_OBJECT_MANIFEST)) {
             isMultiPartManifest = true;
             if (!multiPartManifest) {
-                if (blob == null) {
+                if (blob == null || partial) {
+                    // the range and conditions apply to the combined object, not to its manifest
+                    discard(blob);
+                    blob = null;
                     String sloData = meta.getUserMetadata().get(STATIC_OBJECT_MANIFEST);
                     String[] data = sloData.split(" ", 2);
 
@@ -284,23 +381,28 @@ public final class ObjectResource extends BlobStoreResource {
                     }
                 }
 
-                if (blob == null) {
-                    blob = blobStore.getBlob(container, object);
-                }
-                return getSloObject(blobStore, blob, options, ranges);
+                return getSloObject(blobStore, container, object, meta, blob, ranges);
             }
-        } else if (blob == null) {
-            // this is just a normal blob
-            try {
-                blob = blobStore.getBlob(container, object, options);
-            } catch (IllegalArgumentException e) {
-                if (ranges != null) {
-                    throw requestRangeNotSatisfiable();
-                } else {
-                    throw e;
-                }
+        } else if (ranges != null && ranges.size() > 1) {
+            Response cond = conditionalGetSatisified(options, objectETag(meta), meta.getLastModified());
+            if (cond != null) {
+                return cond;
+            }
+            return getByteRanges(meta, objectETag(meta), resolveRanges(ranges, meta.getSize()), meta.getSize(),
+                    (start, end) -> {
+                        Blob part = blobStore.getBlob(container, object, new GetOptions().range(start, end - 1));
+                        if (part == null) {
+                            throw new IOException(container + "/" + object + " was removed");
+                        }
+                        return part.getPayload().openStream();
+                    });
+        }
+
+        if (!isMultiPartManifest && request != null) {
+            FileRegion region = fileRegion(container, blob, ranges, request);
+            if (region != null) {
+                return addObjectHeaders(Response.ok(region), meta, Optional.of(blobGetStandardHeaders(blob))).build();
             }
-            meta = blob.getMetadata();
         }
 
         try {
@@ -314,51 +416,255 @@ public final class ObjectResource extends BlobStoreResource {
         }
     }
 
+    /**
+     * The metadata of {@code object} if it is a large object whose manifest failed the range or conditions of a GET
+     * with {@code failure}, as these apply to the combined object instead, or an object uploaded in parts that failed
+     * the conditions, as these apply to its MD5. Otherwise null, and the failure stands.
+     */
+    private static BlobMetadata largeObjectMetadata(BlobStore blobStore, String container, String object,
+                                                    boolean multiPartManifest, RuntimeException failure) {
+        if (multiPartManifest) {
+            return null;
+        }
+        if (failure instanceof HttpResponseException) {
+            HttpResponse response = ((HttpResponseException) failure).getResponse();
+            int code = response == null ? 0 : response.getStatusCode();
+            if (code != 304 && code != 412 && code != 416) {
+                return null;
+            }
+        }
+        BlobMetadata meta = blobStore.blobMetadata(container, object);
+        if (meta == null || !(isLargeObject(meta) || (failure instanceof HttpResponseException &&
+                meta.getUserMetadata().containsKey(MultipartUploader.ETAG_METADATA)))) {
+            return null;
+        }
+        return meta;
+    }
+
+    private static boolean isLargeObject(BlobMetadata meta) {
+        return meta.getUserMetadata().containsKey(STATIC_OBJECT_MANIFEST) ||
+                meta.getUserMetadata().containsKey(DYNAMIC_OBJECT_MANIFEST);
+    }
+
+    /** The ETag Swift clients expect: the MD5 of an object the backend received in parts, or the backend's. */
+    private static String objectETag(BlobMetadata meta) {
+        String eTag = meta.getUserMetadata().get(MultipartUploader.ETAG_METADATA);
+        return eTag != null ? eTag : meta.getETag();
+    }
+
+    private static void discard(Blob blob) {
+        if (blob != null && blob.getPayload() != null) {
+            blob.getPayload().release();
+        }
+    }
+
+    /**
+     * The file that holds {@code blob} if it comes from the {@code filesystem} provider, limited to the requested
+     * range, or null if the payload has to be streamed. The region takes the length that jclouds reported for the
+     * payload, so it must still fit in the file.
+     */
+    private FileRegion fileRegion(String container, Blob blob, List<Pair<Long, Long>> ranges, Request request) {
+        java.nio.file.Path baseDir = getConfig().getFilesystemBaseDir();
+        Long length = blob.getPayload().getContentMetadata().getContentLength();
+        if (baseDir == null || length == null ||
+                blob.getPayload().getContentMetadata().getContentEncoding() != null) {
+            return null;
+        }
+        java.nio.file.Path containerDir = baseDir.resolve(container).normalize();
+        java.nio.file.Path file = containerDir.resolve(blob.getMetadata().getName()).normalize();
+        if (!file.startsWith(containerDir) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            long size = Files.size(file);
+            long offset = resolveRanges(ranges, size).get(0)[0];
+            if (offset + length > size) {
+                return null;
+            }
+            return new FileRegion(file, offset, length, request.getResponse(), getConfig().getSendfileCount());
+        } catch (IOException e) {
+            logger.debug("cannot send {} from its file: {}", file, e.toString());
+            return null;
+        }
+    }
+
     private ClientErrorException requestRangeNotSatisfiable() {
-        throw new ClientErrorException(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
+        return new ClientErrorException(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
     }
 
-    private long getTotalRangesLength(List<Pair<Long, Long>> ranges, long totalSize) {
-        return ranges.stream().mapToLong(r -> {
+    /**
+     * Resolve the requested ranges against an object of {@code totalSize} bytes into {start, end} pairs, end
+     * exclusive, clamped to the object. A null {@code ranges} is the whole object. Ranges that start past the end of
+     * the object are dropped, and only if none is left is the request not satisfiable.
+     */
+    private List<long[]> resolveRanges(List<Pair<Long, Long>> ranges, long totalSize) {
+        if (ranges == null) {
+            return Collections.singletonList(new long[]{0, totalSize});
+        }
+        List<long[]> spans = ranges.stream().map(r -> {
             if (r.getFirst() == null) {
-                if (r.getSecond() > totalSize) {
-                    throw requestRangeNotSatisfiable();
-                }
-                return r.getSecond();
+                // suffix range, longer suffixes than the object select all of it
+                return new long[]{Math.max(0, totalSize - r.getSecond()), totalSize};
             } else {
-                if (r.getFirst() >= totalSize) {
-                    throw requestRangeNotSatisfiable();
-                }
-                if (r.getSecond() == null) {
-                    return totalSize - r.getFirst();
-                } else {
-                    return r.getSecond() - r.getFirst() + 1;
+                long end = r.getSecond() == null ? totalSize : Math.min(r.getSecond() + 1, totalSize);
+                return new long[]{r.getFirst(), end};
+            }
+        }).filter(span -> span[0] < span[1]).collect(Collectors.toList());
+        if (spans.isEmpty()) {
+            throw requestRangeNotSatisfiable();
+        }
+        return spans;
+    }
+
+    /**
+     * The byte spans of the segments that make up {@code spans} of the combined object, computed as the response is
+     * streamed. Only the segments holding the first byte of each span are looked up, with a binary search.
+     */
+    private static Iterable<SegmentRange> segmentRanges(LargeObjectManifest manifest, List<long[]> spans) {
+        return () -> new AbstractIterator<SegmentRange>() {
+            private final Iterator<long[]> spanIterator = spans.iterator();
+            private long position;
+            private long end;
+            private int segment;
+
+            @Override
+            protected SegmentRange computeNext() {
+                while (true) {
+                    if (position == end) {
+                        if (!spanIterator.hasNext()) {
+                            return endOfData();
+                        }
+                        long[] span = spanIterator.next();
+                        position = span[0];
+                        end = span[1];
+                        if (position == end) {
+                            continue;
+                        }
+                        segment = manifest.findSegment(position);
+                    }
+                    long segmentStart = manifest.getOffset(segment);
+                    long length = Math.min(end, manifest.getOffset(segment + 1)) - position;
+                    ManifestEntry entry = manifest.getEntry(segment);
+                    long offset = position - segmentStart;
+                    position += length;
+                    segment++;
+                    if (length > 0) {
+                        return new SegmentRange(entry, offset, length);
+                    }
                 }
             }
-        }).sum();
+        };
     }
 
-    private Response getSloObject(BlobStore blobStore, Blob blob, GetOptions options, List<Pair<Long, Long>> ranges) {
-        try {
-            Iterable<ManifestEntry> entries = Arrays.asList(readSLOManifest(blob.getPayload().openStream()));
-            Pair<Long, String> sizeAndEtag = getManifestTotalSizeAndETag(entries);
+    private Response getLargeObject(BlobStore blobStore, LargeObjectManifest manifest, BlobMetadata meta,
+                                    List<Pair<Long, Long>> ranges) {
+        List<long[]> spans = resolveRanges(ranges, manifest.getSize());
+        if (spans.size() > 1) {
+            return getByteRanges(meta, manifest.getETag(), spans, manifest.getSize(), (start, end) -> {
+                ManifestObjectInputStream in = new ManifestObjectInputStream(blobStore,
+                        segmentRanges(manifest, Collections.singletonList(new long[]{start, end})));
+                in.openNextStream();
+                return in;
+            });
+        }
+        long size = spans.get(0)[1] - spans.get(0)[0];
+        if (ranges != null) {
+            logger.debug("range request for {} bytes", size);
+        }
 
-            logger.debug("getting SLO object: {}", sizeAndEtag);
-            entries.forEach(e -> logger.debug("sub-object: {}", e));
+        InputStream combined = new ManifestObjectInputStream(blobStore, segmentRanges(manifest, spans));
+        return addObjectHeaders(Response.ok(combined), meta,
+                Optional.of(overwriteSizeAndETag(size, manifest.getETag())))
+                .build();
+    }
 
-            InputStream combined = new ManifestObjectInputStream(blobStore, entries);
-            long size = sizeAndEtag.getFirst();
-            if (ranges != null) {
-                combined = new HttpRangeInputStream(combined, sizeAndEtag.getFirst(), ranges);
-                size = getTotalRangesLength(ranges, size);
-                logger.debug("range request for {} bytes", size);
+    /** Answer a multi-range GET with a multipart/byteranges body. */
+    private Response getByteRanges(BlobMetadata meta, String eTag, List<long[]> spans, long totalSize,
+                                   ByteRangesOutput.RangeOpener opener) {
+        if (countOverlaps(spans) > MAX_RANGE_OVERLAPS) {
+            logger.debug("multi-range request with overlapping ranges, returning the whole object");
+            InputStream in;
+            try {
+                in = opener.open(0, totalSize);
+            } catch (IOException e) {
+                throw propagate(e);
             }
-            return addObjectHeaders(Response.ok(combined), blob.getMetadata(),
-                    Optional.of(overwriteSizeAndETag(size, sizeAndEtag.getSecond())))
+            return addObjectHeaders(Response.ok(in), meta, Optional.of(overwriteSizeAndETag(totalSize, eTag)))
                     .build();
+        }
+        SegmentReadAhead readAhead = getConfig().getSegmentReadAhead();
+        ByteRangesOutput output = new ByteRangesOutput(spans, totalSize, contentType(meta), opener,
+                readAhead.getExecutor(), readAhead.getSegments());
+        logger.debug("multi-range request for {} ranges", spans.size());
+        return addObjectHeaders(Response.status(Response.Status.PARTIAL_CONTENT).entity(output), meta,
+                Optional.of(ImmutableMap.of(
+                        HttpHeaders.CONTENT_LENGTH, output.getContentLength(),
+                        HttpHeaders.ETAG, eTag,
+                        HttpHeaders.CONTENT_TYPE, output.getMediaType())))
+                .build();
+    }
+
+    /** The number of pairs of {@code spans} sharing bytes, which would be sent more than once. */
+    private static int countOverlaps(List<long[]> spans) {
+        int overlaps = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            for (int j = i + 1; j < spans.size(); j++) {
+                if (spans.get(i)[0] < spans.get(j)[1] && spans.get(j)[0] < spans.get(i)[1]) {
+                    overlaps++;
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    private static String contentType(BlobMetadata meta) {
+        return Strings.isNullOrEmpty(meta.getContentMetadata().getContentType()) ?
+                MediaType.APPLICATION_OCTET_STREAM : meta.getContentMetadata().getContentType();
+    }
+
+    private Response getSloObject(BlobStore blobStore, String container, String object, BlobMetadata meta,
+                                  Blob blob, List<Pair<Long, Long>> ranges) {
+        LargeObjectManifest manifest = getSloManifest(blobStore, container, object, meta, blob);
+        logger.debug("getting SLO object: {} {}", manifest.getSize(), manifest.getETag());
+        manifest.getEntries().forEach(e -> logger.debug("sub-object: {}", e));
+        recordLargeObject("slo", manifest);
+        return getLargeObject(blobStore, manifest, meta, ranges);
+    }
+
+    /**
+     * Return the parsed manifest of an SLO, reading {@code blob}, or fetching it if null, only when no manifest
+     * with the same ETag is cached.
+     */
+    private LargeObjectManifest getSloManifest(BlobStore blobStore, String container, String object,
+                                               BlobMetadata meta, Blob blob) {
+        Cache<String, LargeObjectManifest> cache = getConfig().getSloManifestCache();
+        String manifestETag = meta.getETag() == null ? null : Utils.trimETag(meta.getETag());
+        LargeObjectManifest manifest = manifestETag == null ? null : cache.getIfPresent(manifestETag);
+        if (manifest != null) {
+            return manifest;
+        }
+
+        if (blob == null) {
+            blob = blobStore.getBlob(container, object);
+            if (blob == null) {
+                throw new NotFoundException();
+            }
+            manifestETag = blob.getMetadata().getETag() == null ? null :
+                    Utils.trimETag(blob.getMetadata().getETag());
+        }
+        try (InputStream in = blob.getPayload().openStream()) {
+            manifest = newManifest(Arrays.asList(readSLOManifest(in)));
         } catch (IOException e) {
             throw propagate(e);
         }
+        if (manifestETag != null) {
+            cache.put(manifestETag, manifest);
+        }
+        return manifest;
+    }
+
+    private LargeObjectManifest newManifest(List<ManifestEntry> entries) {
+        return new LargeObjectManifest(entries, getManifestTotalSizeAndETag(entries).getSecond());
     }
 
     private Response getDloObject(BlobStore blobStore, BlobMetadata meta, GetOptions options, List<Pair<Long, Long>> ranges) {
@@ -366,30 +672,33 @@ public final class ObjectResource extends BlobStoreResource {
         Pair<String, String> param = validateCopyParam(manifest);
         String dloContainer = param.getFirst();
         String objectsPrefix = param.getSecond();
-        List<ManifestEntry> segments = getDLOSegments(blobStore, dloContainer, objectsPrefix);
-        Pair<Long, String> sizeAndEtag = getManifestTotalSizeAndETag(segments);
+        LargeObjectManifest segments = getDLOSegments(blobStore, dloContainer, objectsPrefix);
 
         Response cond = conditionalGetSatisified(options,
-                sizeAndEtag.getSecond(), meta.getLastModified());
+                segments.getETag(), meta.getLastModified());
         if (cond != null) {
             return cond;
         }
 
-        logger.debug("getting DLO object: {}", sizeAndEtag);
+        logger.debug("getting DLO object: {} {}", segments.getSize(), segments.getETag());
+        recordLargeObject("dlo", segments);
+        return getLargeObject(blobStore, segments, meta, ranges);
+    }
 
-        InputStream combined = new ManifestObjectInputStream(blobStore, segments);
-        long size = sizeAndEtag.getFirst();
-        if (ranges != null) {
-            combined = new HttpRangeInputStream(combined, sizeAndEtag.getFirst(), ranges);
-            size = getTotalRangesLength(ranges, size);
-            logger.debug("range request for {} bytes", size);
-        }
-        return addObjectHeaders(Response.ok(combined), meta,
-                Optional.of(overwriteSizeAndETag(size, sizeAndEtag.getSecond())))
-                .build();
+    private void recordLargeObject(String type, LargeObjectManifest manifest) {
+        Metrics metrics = getConfig().getMetrics();
+        String labels = Metrics.labels("type", type);
+        metrics.counter("large_object_gets_total", "GETs of large objects.", labels).increment();
+        metrics.counter("large_object_segments_total", "Segments in the manifests of large object GETs.", labels)
+                .add(manifest.getSegmentCount());
     }
 
-    private List<ManifestEntry> getDLOSegments(BlobStore blobStore, String container, String objectsPrefix) {
+    private LargeObjectManifest getDLOSegments(BlobStore blobStore, String container, String objectsPrefix) {
+        return getConfig().getMetadataCache().getDloSegments(blobStore, container, objectsPrefix,
+                () -> listDLOSegments(blobStore, container, objectsPrefix));
+    }
+
+    private LargeObjectManifest listDLOSegments(BlobStore blobStore, String container, String objectsPrefix) {
         ListContainerOptions listOptions = new ListContainerOptions()
                 .recursive()
                 .prefix(objectsPrefix);
@@ -403,7 +712,7 @@ public final class ObjectResource extends BlobStoreResource {
                 entry.container = container;
                 entry.object = sm.getName();
                 entry.size_bytes = sm.getSize();
-                entry.etag = sm.getETag();
+                entry.etag = getConfig().getMultipartUploader().listedETag(blobStore, container, sm);
                 segments.add(entry);
             } else {
                 throw new IllegalStateException(
@@ -412,7 +721,7 @@ public final class ObjectResource extends BlobStoreResource {
         }
 
         segments.forEach(e -> logger.debug("sub-object: {}", e));
-        return segments;
+        return newManifest(segments);
     }
 
     private static String normalizePath(String pathName) {
@@ -427,7 +736,8 @@ public final class ObjectResource extends BlobStoreResource {
         return StreamSupport.stream(request.getHeaderNames().spliterator(), false)
                 .filter(name -> name.toLowerCase().startsWith(META_HEADER_PREFIX.toLowerCase()))
                 .filter(name -> {
-                    if (name.equalsIgnoreCase(META_HEADER_PREFIX) || RESERVED_METADATA.contains(name)) {
+                    if (name.equalsIgnoreCase(META_HEADER_PREFIX) || RESERVED_METADATA.contains(name) ||
+                            RESERVED_METADATA.contains(name.substring(META_HEADER_PREFIX.length()).toLowerCase())) {
                         throw new BadRequestException();
                     }
                     if (name.length() - META_HEADER_PREFIX.length() > InfoResource.CONFIG.swift.max_meta_name_length ||
@@ -484,7 +794,7 @@ public final class ObjectResource extends BlobStoreResource {
                     .build();
             return blobStore.putBlob(destContainer, blob);
         } else {
-            throw new ClientErrorException(statusInfo.getReasonPhrase(), statusInfo.getStatusCode());
+            throw new WebApplicationException(statusInfo.getReasonPhrase(), statusInfo.getStatusCode());
         }
 
     }
@@ -551,9 +861,6 @@ public final class ObjectResource extends BlobStoreResource {
         Map<String, String> additionalUserMeta = getUserMetadata(request);
 
         BlobStore blobStore = getBlobStore(authToken).get(container, objectName);
-        if (!blobStore.containerExists(container) || !blobStore.containerExists(destContainer)) {
-            return notFound();
-        }
         String copiedFrom;
         try {
             copiedFrom = container + "/" + URLDecoder.decode(objectName, "UTF-8");
@@ -561,7 +868,13 @@ public final class ObjectResource extends BlobStoreResource {
             throw propagate(e);
         }
 
-        BlobMetadata meta = blobStore.blobMetadata(container, objectName);
+        // a missing source container surfaces here and a missing destination container from the copy itself
+        BlobMetadata meta;
+        try {
+            meta = getConfig().getMetadataCache().getFreshBlobMetadata(blobStore, container, objectName);
+        } catch (ContainerNotFoundException e) {
+            meta = null;
+        }
         if (meta == null) {
             return notFound();
         }
@@ -582,8 +895,14 @@ public final class ObjectResource extends BlobStoreResource {
 
         builder.contentMetadata(contentMetadata.build());
 
+        String storedETag = meta.getUserMetadata().get(MultipartUploader.ETAG_METADATA);
         if (freshMetadata) {
-            builder.userMetadata(additionalUserMeta);
+            Map<String, String> newMetadata = new HashMap<>(additionalUserMeta);
+            if (storedETag != null) {
+                // the ETag of the copy is still the MD5 of an object uploaded in parts
+                newMetadata.put(MultipartUploader.ETAG_METADATA, storedETag);
+            }
+            builder.userMetadata(newMetadata);
         } else {
             if (!additionalUserMeta.isEmpty()) {
                 Map<String, String> newMetadata = new HashMap<>();
@@ -594,7 +913,12 @@ public final class ObjectResource extends BlobStoreResource {
         }
 
         if (ifMatch != null) {
-            builder.ifMatch(ifMatch);
+            if (storedETag == null) {
+                builder.ifMatch(ifMatch);
+            } else if (!eTagsEqual(objectETag(meta), maybeUnquote(ifMatch))) {
+                // uploaded in parts, the backend would compare with its own ETag rather than the MD5
+                return Response.status(Response.Status.PRECONDITION_FAILED).build();
+            }
         }
         if (ifModifiedSince != null) {
             builder.ifModifiedSince(ifModifiedSince);
@@ -606,15 +930,33 @@ public final class ObjectResource extends BlobStoreResource {
         CopyOptions options = builder.build();
         validateUserMetadata(options.userMetadata());
 
+        String etag;
+        try {
+            etag = copyBlob(blobStore, container, objectName, destContainer, destObject, meta, options,
+                    "get".equals(multiPartManifest));
+        } catch (ContainerNotFoundException e) {
+            return notFound();
+        }
+        return Response.status(Response.Status.CREATED)
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CONTENT_LENGTH, 0)
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .header(HttpHeaders.DATE, new Date())
+                .header("X-Copied-From", copiedFrom)
+                .build();
+    }
+
+    private String copyBlob(BlobStore blobStore, String container, String objectName, String destContainer,
+                            String destObject, BlobMetadata meta, CopyOptions options, boolean multiPartManifest) {
         Map<String, String> userMetadata = meta.getUserMetadata();
         String etag = null;
-        if (!"get".equals(multiPartManifest)) {
+        if (!multiPartManifest) {
             // copy is supposed to flatten the large object, which we have to emulate
             Response resp = null;
             if (userMetadata.containsKey(DYNAMIC_OBJECT_MANIFEST)) {
                 resp = getDloObject(blobStore, meta, GetOptions.NONE, null);
             } else if (userMetadata.containsKey(STATIC_OBJECT_MANIFEST)) {
-                resp = getSloObject(blobStore, blobStore.getBlob(container, objectName), GetOptions.NONE, null);
+                resp = getSloObject(blobStore, container, objectName, meta, null, null);
             }
 
             if (resp != null) {
@@ -628,14 +970,12 @@ public final class ObjectResource extends BlobStoreResource {
 
         if (etag == null) {
             etag = serverCopyBlob(blobStore, container, objectName, destContainer, destObject, options);
+            if (userMetadata.containsKey(MultipartUploader.ETAG_METADATA)) {
+                // the copy keeps the MD5 of an object uploaded in parts, the backend reports an ETag of its own
+                etag = objectETag(meta);
+            }
         }
-        return Response.status(Response.Status.CREATED)
-                .header(HttpHeaders.ETAG, etag)
-                .header(HttpHeaders.CONTENT_LENGTH, 0)
-                .header(HttpHeaders.CONTENT_TYPE, contentType)
-                .header(HttpHeaders.DATE, new Date())
-                .header("X-Copied-From", copiedFrom)
-                .build();
+        return etag;
     }
 
     // TODO: actually handle this, jclouds doesn't support metadata update yet
@@ -657,10 +997,13 @@ public final class ObjectResource extends BlobStoreResource {
         }
 
         BlobStore blobStore = getBlobStore(authToken).get(container, objectName);
-        if (!blobStore.containerExists(container)) {
-            return notFound();
+        BlobMetadata meta;
+        try {
+            meta = getConfig().getMetadataCache().getFreshBlobMetadata(blobStore, container, objectName);
+        } catch (ContainerNotFoundException e) {
+            // a missing container is no different from a missing object
+            meta = null;
         }
-        BlobMetadata meta = blobStore.blobMetadata(container, objectName);
         if (meta == null) {
             return notFound();
         }
@@ -697,17 +1040,31 @@ public final class ObjectResource extends BlobStoreResource {
         }
     }
 
-    private ManifestEntry[] readSLOManifest(InputStream in) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        ManifestEntry[] res = mapper.readValue(in, ManifestEntry[].class);
-        if (res.length > 1000) {
-            throw new ClientErrorException(Response.Status.BAD_REQUEST);
+    /**
+     * Parse a manifest one entry at a time, so that oversized manifests are rejected without reading them fully.
+     */
+    private static ManifestEntry[] readSLOManifest(InputStream in) throws IOException {
+        List<ManifestEntry> res = new ArrayList<>();
+        try (JsonParser parser = MANIFEST_READER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ClientErrorException(Response.Status.BAD_REQUEST);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (res.size() >= InfoResource.CONFIG.slo.max_manifest_segments) {
+                    throw new ClientErrorException(Response.Status.BAD_REQUEST);
+                }
+                res.add(MANIFEST_READER.readValue(parser));
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY || parser.nextToken() != null) {
+                // nothing may follow the array, such as a second one
+                throw new ClientErrorException(Response.Status.BAD_REQUEST);
+            }
         }
 
-        return res;
+        return res.toArray(new ManifestEntry[res.size()]);
     }
 
-    private Pair<Long, String> getManifestTotalSizeAndETag(Iterable<ManifestEntry> entries) {
+    static Pair<Long, String> getManifestTotalSizeAndETag(Iterable<ManifestEntry> entries) {
         Hasher hash = Hashing.md5().newHasher();
         long segmentsTotalLength = 0;
         for (ManifestEntry entry : entries) {
@@ -719,56 +1076,70 @@ public final class ObjectResource extends BlobStoreResource {
     }
 
     private void validateManifest(ManifestEntry[] res, BlobStore blobStore, String authToken) {
-        Arrays.stream(res).parallel()
-                .forEach(s -> {
-                    Response r = null;
-                    try {
-                        r = headObject(blobStore, authToken, s.container, s.object, null);
-                        if (!r.getStatusInfo().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
-                            throw new ClientErrorException(Response.Status.CONFLICT);
-                        }
-                        long size = Long.parseLong(r.getHeaderString(HttpHeaders.CONTENT_LENGTH));
-                        String etag = r.getHeaderString(HttpHeaders.ETAG);
-                        if (s.size_bytes != size || !eTagsEqual(s.etag, etag)) {
-                            logger.error("400 bad request: {}/{} {} {} != {} {}",
-                                    s.container, s.object, s.etag, s.size_bytes, etag, size);
+        getBackendExecutor().forEach(Arrays.asList(res), s -> {
+            Response r = null;
+            try {
+                r = headObject(blobStore, authToken, s.container, s.object, null);
+                if (!r.getStatusInfo().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                    throw new ClientErrorException(Response.Status.CONFLICT);
+                }
+                long size = Long.parseLong(r.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+                String etag = r.getHeaderString(HttpHeaders.ETAG);
+                if (s.size_bytes != size || !eTagsEqual(s.etag, etag)) {
+                    logger.error("400 bad request: {}/{} {} {} != {} {}",
+                            s.container, s.object, s.etag, s.size_bytes, etag, size);
 
-                            throw new ClientErrorException(Response.Status.BAD_REQUEST);
-                        }
-                    } finally {
-                        if (r != null) {
-                            r.close();
-                        }
-                    }
-                });
+                    throw new ClientErrorException(Response.Status.BAD_REQUEST);
+                }
+            } finally {
+                if (r != null) {
+                    r.close();
+                }
+            }
+        });
     }
 
     @PUT
-    public Response putObject(@NotNull @PathParam("container") String container,
-                              @NotNull @Encoded @PathParam("object") String objectName,
-                              @NotNull @PathParam("account") String account,
-                              @QueryParam("multipart-manifest") String multiPartManifest,
-                              @QueryParam("signature") String signature,
-                              @QueryParam("expires") String expires,
-                              @HeaderParam(DYNAMIC_OBJECT_MANIFEST) String objectManifest,
-                              @HeaderParam("X-Auth-Token") String authToken,
-                              @HeaderParam(HttpHeaders.CONTENT_LENGTH) String contentLengthParam,
-                              @HeaderParam("Transfer-Encoding") String transferEncoding,
-                              @HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType,
-                              @HeaderParam("X-Detect-Content-Type") boolean detectContentType,
-                              @HeaderParam("X-Copy-From") String copyFrom,
-                              @HeaderParam("X-Copy-From-Account") String copyFromAccount,
-                              @HeaderParam(HttpHeaders.ETAG) String eTag,
-                              @HeaderParam(HttpHeaders.CONTENT_DISPOSITION) String contentDisposition,
-                              @HeaderParam(HttpHeaders.CONTENT_ENCODING) String contentEncoding,
-                              @HeaderParam("X-Delete-At") long deleteAt,
-                              @HeaderParam("X-Delete-After") long deleteAfter,
-                              @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
-                              @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
-                              @HeaderParam(HttpHeaders.IF_MODIFIED_SINCE) Date ifModifiedSince,
-                              @HeaderParam(HttpHeaders.IF_UNMODIFIED_SINCE) Date ifUnmodifiedSince,
-                              @HeaderParam(SwiftHeaders.OBJECT_COPY_FRESH_METADATA) boolean freshMetadata,
-                              @Context Request request) {
+    public void putObject(@Suspended AsyncResponse asyncResponse,
+                          @NotNull @PathParam("container") String container,
+                          @NotNull @Encoded @PathParam("object") String objectName,
+                          @NotNull @PathParam("account") String account,
+                          @QueryParam("multipart-manifest") String multiPartManifest,
+                          @QueryParam("signature") String signature,
+                          @QueryParam("expires") String expires,
+                          @HeaderParam(DYNAMIC_OBJECT_MANIFEST) String objectManifest,
+                          @HeaderParam("X-Auth-Token") String authToken,
+                          @HeaderParam(HttpHeaders.CONTENT_LENGTH) String contentLengthParam,
+                          @HeaderParam("Transfer-Encoding") String transferEncoding,
+                          @HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                          @HeaderParam("X-Detect-Content-Type") boolean detectContentType,
+                          @HeaderParam("X-Copy-From") String copyFrom,
+                          @HeaderParam("X-Copy-From-Account") String copyFromAccount,
+                          @HeaderParam(HttpHeaders.ETAG) String eTag,
+                          @HeaderParam(HttpHeaders.CONTENT_DISPOSITION) String contentDisposition,
+                          @HeaderParam(HttpHeaders.CONTENT_ENCODING) String contentEncoding,
+                          @HeaderParam("X-Delete-At") long deleteAt,
+                          @HeaderParam("X-Delete-After") long deleteAfter,
+                          @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                          @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                          @HeaderParam(HttpHeaders.IF_MODIFIED_SINCE) Date ifModifiedSince,
+                          @HeaderParam(HttpHeaders.IF_UNMODIFIED_SINCE) Date ifUnmodifiedSince,
+                          @HeaderParam(SwiftHeaders.OBJECT_COPY_FRESH_METADATA) boolean freshMetadata,
+                          @Context Request request) {
+        getConfig().getTransferExecutor().resume(asyncResponse, () -> putObjectResponse(container, objectName, account,
+                multiPartManifest, signature, expires, objectManifest, authToken, contentLengthParam, transferEncoding,
+                contentType, detectContentType, copyFrom, copyFromAccount, eTag, contentDisposition, contentEncoding,
+                deleteAt, deleteAfter, ifMatch, ifNoneMatch, ifModifiedSince, ifUnmodifiedSince, freshMetadata,
+                request));
+    }
+
+    private Response putObjectResponse(String container, String objectName, String account, String multiPartManifest,
+                                       String signature, String expires, String objectManifest, String authToken,
+                                       String contentLengthParam, String transferEncoding, MediaType contentType,
+                                       boolean detectContentType, String copyFrom, String copyFromAccount, String eTag,
+                                       String contentDisposition, String contentEncoding, long deleteAt,
+                                       long deleteAfter, String ifMatch, String ifNoneMatch, Date ifModifiedSince,
+                                       Date ifUnmodifiedSince, boolean freshMetadata, Request request) {
         //objectName = normalizePath(objectName);
         if (objectName.length() > InfoResource.CONFIG.swift.max_object_name_length) {
             return badRequest();
@@ -799,17 +1170,25 @@ public final class ObjectResource extends BlobStoreResource {
 
         Map<String, String> metadata = getUserMetadata(request);
         validateUserMetadata(metadata);
-        InputStream copiedStream = null;
+        byte[] manifestBody = null;
+        LargeObjectManifest sloManifest = null;
 
         BlobStore blobStore = getBlobStore(authToken).get(container, objectName);
         if ("put".equals(multiPartManifest)) {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            try (TeeInputStream tee = new TeeInputStream(request.getInputStream(), buffer, true)) {
-                ManifestEntry[] manifest = readSLOManifest(tee);
+            try {
+                ManifestEntry[] manifest = readSLOManifest(request.getInputStream());
                 validateManifest(manifest, blobStore, authToken);
-                Pair<Long, String> sizeAndEtag = getManifestTotalSizeAndETag(Arrays.asList(manifest));
-                metadata.put(STATIC_OBJECT_MANIFEST, sizeAndEtag.getFirst() + " " + sizeAndEtag.getSecond());
-                copiedStream = new ByteArrayInputStream(buffer.toByteArray());
+                sloManifest = newManifest(Arrays.asList(manifest));
+                if (eTag != null && !eTagsEqual(eTag, sloManifest.getETag())) {
+                    // Unprocessable Entity
+                    throw new ClientErrorException(422);
+                }
+                metadata.put(STATIC_OBJECT_MANIFEST, sloManifest.getSize() + " " + sloManifest.getETag());
+                // store the validated manifest rather than what the client sent, so the body is only copied once
+                manifestBody = MANIFEST_WRITER.writeValueAsBytes(manifest);
+                eTag = null;
+            } catch (JsonProcessingException e) {
+                throw new ClientErrorException(Response.Status.BAD_REQUEST, e);
             } catch (IOException e) {
                 throw propagate(e);
             }
@@ -817,10 +1196,6 @@ public final class ObjectResource extends BlobStoreResource {
             metadata.put(DYNAMIC_OBJECT_MANIFEST, objectManifest);
         }
 
-        if (!blobStore.containerExists(container)) {
-            return notFound();
-        }
-
         HashCode contentMD5 = null;
         if (eTag != null) {
             try {
@@ -834,7 +1209,7 @@ public final class ObjectResource extends BlobStoreResource {
             }
         }
 
-        try (InputStream is = copiedStream != null ? copiedStream : request.getInputStream()) {
+        try (InputStream is = manifestBody != null ? new ByteArrayInputStream(manifestBody) : request.getInputStream()) {
             BlobBuilder.PayloadBlobBuilder builder = blobStore.blobBuilder(objectName)
                     .userMetadata(metadata)
                     .payload(is);
@@ -847,7 +1222,9 @@ public final class ObjectResource extends BlobStoreResource {
             if (contentType != null) {
                 builder.contentType(contentType.toString());
             }
-            if (contentLengthParam != null) {
+            if (manifestBody != null) {
+                builder.contentLength(manifestBody.length);
+            } else if (contentLengthParam != null) {
                 builder.contentLength(contentLength);
             }
             if (contentMD5 != null) {
@@ -856,7 +1233,13 @@ public final class ObjectResource extends BlobStoreResource {
             try {
                 String remoteETag;
                 try {
-                    remoteETag = blobStore.putBlob(container, builder.build());
+                    long length = contentLengthParam == null ? -1 : contentLength;
+                    MultipartUploader uploader = getConfig().getMultipartUploader();
+                    if (manifestBody == null && uploader.accepts(blobStore, length)) {
+                        remoteETag = uploader.putBlob(blobStore, container, builder.build(), is, length, contentMD5);
+                    } else {
+                        remoteETag = blobStore.putBlob(container, builder.build());
+                    }
                 } catch (HttpResponseException e) {
                     HttpResponse response = e.getResponse();
                     if (response == null) {
@@ -868,15 +1251,21 @@ public final class ObjectResource extends BlobStoreResource {
                         // swift expects 422 for md5 mismatch
                         throw new ClientErrorException(response.getStatusLine(), 422, e.getCause());
                     } else {
-                        throw new ClientErrorException(response.getStatusLine(), code, e.getCause());
+                        // a 5xx from the backend is not a ClientErrorException
+                        throw new WebApplicationException(response.getStatusLine(), e.getCause(), code);
                     }
                 }
-                BlobMetadata meta = blobStore.blobMetadata(container, objectName);
+                if (sloManifest != null && remoteETag != null) {
+                    getConfig().getSloManifestCache().put(Utils.trimETag(remoteETag), sloManifest);
+                }
+                // putBlob only returns the ETag, so rather than asking the backend for the metadata again, the
+                // object counts as modified when the proxy finished writing it
+                Date now = new Date();
                 return Response.status(Response.Status.CREATED).header(HttpHeaders.ETAG, remoteETag)
-                        .header(HttpHeaders.LAST_MODIFIED, meta.getLastModified())
+                        .header(HttpHeaders.LAST_MODIFIED, now)
                         .header(HttpHeaders.CONTENT_LENGTH, 0)
                         .header(HttpHeaders.CONTENT_TYPE, contentType)
-                        .header(HttpHeaders.DATE, new Date()).build();
+                        .header(HttpHeaders.DATE, now).build();
             } catch (ContainerNotFoundException e) {
                 return notFound();
             }
@@ -926,10 +1315,9 @@ public final class ObjectResource extends BlobStoreResource {
                     String objectsPrefix = param.getSecond();
 
                     blobStore = getBlobStore(authToken).get(container);
-                    List<ManifestEntry> segments = getDLOSegments(blobStore, dloContainer, objectsPrefix);
-                    Pair<Long, String> sizeAndEtag = getManifestTotalSizeAndETag(segments);
+                    LargeObjectManifest segments = getDLOSegments(blobStore, dloContainer, objectsPrefix);
                     return addObjectHeaders(Response.ok(), meta,
-                            Optional.of(overwriteSizeAndETag(sizeAndEtag.getFirst(), sizeAndEtag.getSecond())))
+                            Optional.of(overwriteSizeAndETag(segments.getSize(), segments.getETag())))
                             .build();
                 }
             }
@@ -985,7 +1373,7 @@ public final class ObjectResource extends BlobStoreResource {
             }
 
             ManifestEntry[] entries = readSLOManifest(blob.getPayload().openStream());
-            Arrays.stream(entries).parallel().forEach(e -> store.removeBlob(e.container, e.object));
+            getBackendExecutor().forEach(Arrays.asList(entries), e -> store.removeBlob(e.container, e.object));
 
             store.removeBlob(container, objectName);
 
@@ -998,10 +1386,13 @@ public final class ObjectResource extends BlobStoreResource {
                     .build();
         }
 
-        if (!store.containerExists(container)) {
-            return Response.status(Response.Status.NOT_FOUND).build();
+        // removeBlob succeeds whether or not the object exists, so the backend is asked whether to answer 404
+        BlobMetadata meta;
+        try {
+            meta = getConfig().getMetadataCache().getFreshBlobMetadata(store, container, objectName);
+        } catch (ContainerNotFoundException e) {
+            meta = null;
         }
-        BlobMetadata meta = store.blobMetadata(container, objectName);
         if (meta == null) {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
@@ -1028,15 +1419,14 @@ public final class ObjectResource extends BlobStoreResource {
             responseBuilder.header(DYNAMIC_OBJECT_MANIFEST, userMetadata.get(DYNAMIC_OBJECT_MANIFEST));
         }
 
-        String contentType = Strings.isNullOrEmpty(metaData.getContentMetadata().getContentType()) ?
-                MediaType.APPLICATION_OCTET_STREAM : metaData.getContentMetadata().getContentType();
+        String contentType = contentType(metaData);
 
         Map<String, Supplier<Object>> defaultHeaders = ImmutableMap.<String, Supplier<Object>>builder()
                 .put(HttpHeaders.CONTENT_DISPOSITION, () -> metaData.getContentMetadata().getContentDisposition())
                 .put(HttpHeaders.CONTENT_ENCODING, () -> metaData.getContentMetadata().getContentEncoding())
                 .put(HttpHeaders.CONTENT_LENGTH, metaData::getSize)
                 .put(HttpHeaders.LAST_MODIFIED, metaData::getLastModified)
-                .put(HttpHeaders.ETAG, metaData::getETag)
+                .put(HttpHeaders.ETAG, () -> objectETag(metaData))
                 .put(STATIC_OBJECT_MANIFEST, () -> userMetadata.containsKey(STATIC_OBJECT_MANIFEST))
                 .put(HttpHeaders.DATE, Date::new)
                 .put(HttpHeaders.CONTENT_TYPE, () -> contentType)
@@ -1053,118 +1443,19 @@ public final class ObjectResource extends BlobStoreResource {
         return responseBuilder;
     }
 
-    private class HttpRangeInputStream extends InputStream {
-        private final InputStream in;
-        private final Iterator<Range> ranges;
-        private final long size;
-        private Range currentRange;
-        private long offset = -1;
-
-        HttpRangeInputStream(InputStream in, long size, List<Pair<Long, Long>> ranges) {
-            this.in = requireNonNull(in);
-            this.size = size;
-            if (ranges != null) {
-                this.ranges = ranges.stream().map(r -> new Range(r)).collect(Collectors.toList()).iterator();
-                currentRange = this.ranges.next();
-            } else {
-                this.ranges = Collections.emptyIterator();
-                currentRange = new Range(new Pair<>(0L, Long.MAX_VALUE));
-            }
-        }
-
-        private void seek() throws IOException {
-            long skipped = 0;
-            logger.debug("seeking to {} from {}", currentRange, offset);
-            if (currentRange.start > 0) {
-                skipped = in.skip(currentRange.start - offset);
-            } else if (currentRange.start == -1) {
-                // suffix range
-                skipped = in.skip(size - currentRange.available - offset);
-            }
-            offset += skipped;
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (!maybeSeek()) {
-                return -1;
-            }
-
-            int nread = in.read(b, off, len);
-            if (nread != -1) {
-                currentRange.available -= nread;
-                offset += nread;
-            }
-            return nread;
-        }
-
-        private boolean maybeSeek() throws IOException {
-            if (currentRange.available == 0) {
-                if (ranges.hasNext()) {
-                    currentRange = ranges.next();
-                    seek();
-                } else {
-                    return false;
-                }
-            }
-            if (offset == -1) {
-                offset = 0;
-                seek();
-            }
-            return true;
-        }
-
-        @Override
-        public int read() throws IOException {
-            if (!maybeSeek()) {
-                return -1;
-            }
-
-            int val = in.read();
-            if (val != -1) {
-                currentRange.available--;
-                offset++;
-            }
-            return val;
-        }
-
-        private class Range {
-            long start;
-            long available;
-            Range(Pair<Long, Long> rangeSpec) {
-                if (rangeSpec.getFirst() == null) {
-                    start = -1;
-                    available = rangeSpec.getSecond();
-                } else {
-                    start = rangeSpec.getFirst();
-                    if (rangeSpec.getSecond() == null) {
-                        available = Long.MAX_VALUE;
-                    } else {
-                        available = rangeSpec.getSecond() - start + 1;
-                    }
-                }
-            }
-
-            @Override
-            public String toString() {
-                return MoreObjects.toStringHelper(this)
-                        .add("start", start)
-                        .add("available", available)
-                        .toString();
-            }
-        }
-    }
-
     private class ManifestObjectInputStream extends InputStream {
-        private final PeekingIterator<ManifestEntry> entries;
+        private final PeekingIterator<SegmentRange> entries;
         private final BlobStore blobStore;
-        private Response currentResp;
+        private final SegmentReadAhead readAhead;
+        private final Deque<PendingSegment> pending = new ArrayDeque<>();
+        private Segment current;
         private InputStream currentStream;
         private long availableBytes;
 
-        ManifestObjectInputStream(BlobStore blobStore, Iterable<ManifestEntry> entries) {
+        ManifestObjectInputStream(BlobStore blobStore, Iterable<SegmentRange> entries) {
             this.blobStore = requireNonNull(blobStore);
             this.entries = Iterators.peekingIterator(requireNonNull(entries).iterator());
+            this.readAhead = getConfig().getSegmentReadAhead();
         }
 
         @Override
@@ -1180,11 +1471,11 @@ public final class ObjectResource extends BlobStoreResource {
                 remainingSkip -= skipped;
             } else {
                 remainingSkip -= availableBytes;
-                while (entries.hasNext()) {
-                    ManifestEntry e = entries.peek();
-                    if (remainingSkip > e.size_bytes) {
-                        entries.next();
-                        remainingSkip -= e.size_bytes;
+                while (true) {
+                    SegmentRange e = peekNextEntry();
+                    if (e != null && remainingSkip > e.length) {
+                        skipNextEntry();
+                        remainingSkip -= e.length;
                     } else {
                         break;
                     }
@@ -1204,35 +1495,127 @@ public final class ObjectResource extends BlobStoreResource {
             return requestSkip - remainingSkip;
         }
 
-        void openNextStream() throws IOException {
-            if (currentStream != null) {
-                currentResp.close();
-                currentResp = null;
+        private SegmentRange peekNextEntry() {
+            if (!pending.isEmpty()) {
+                return pending.peek().entry;
+            }
+            return entries.hasNext() ? entries.peek() : null;
+        }
+
+        private void skipNextEntry() {
+            if (!pending.isEmpty()) {
+                pending.poll().discard();
+            } else {
+                entries.next();
+            }
+        }
+
+        private void closeCurrent() {
+            if (current != null) {
+                current.close();
+                current = null;
                 currentStream = null;
                 availableBytes = 0;
             }
-            if (!entries.hasNext()) {
-                return;
+        }
+
+        private void setCurrent(Segment segment) {
+            current = segment;
+            currentStream = segment.stream;
+            availableBytes = segment.length;
+        }
+
+        void openNextStream() throws IOException {
+            closeCurrent();
+
+            PendingSegment next = pending.poll();
+            if (next != null) {
+                fillReadAhead();
+                setCurrent(next.await());
+            } else if (entries.hasNext()) {
+                SegmentRange entry = entries.next();
+                fillReadAhead();
+                setCurrent(openSegment(entry, 0));
             }
+        }
 
-            ManifestEntry entry = entries.next();
-            logger.info("opening {}/{}", entry.container, entry.object);
-            Response resp = getObject(blobStore, entry.container, entry.object, GetOptions.NONE, null, false);
+        /**
+         * Start fetching the segments that follow the current one, up to the configured read-ahead. Only segments
+         * that fit in the memory budget are fetched ahead, as they are buffered whole; a segment that does not is
+         * opened when it is reached, rather than holding an idle backend connection that may time out meanwhile.
+         */
+        private void fillReadAhead() {
+            while (pending.size() < readAhead.getSegments() && entries.hasNext()) {
+                SegmentRange entry = entries.peek();
+                if (!readAhead.tryReserve(entry.length)) {
+                    break;
+                }
+                long reserved = entry.length;
+                PendingSegment segment = new PendingSegment(entry, reserved);
+                try {
+                    segment.future = CompletableFuture.supplyAsync(segment::fetch, readAhead.getExecutor());
+                } catch (RejectedExecutionException e) {
+                    // the pool is saturated, later segments will be opened when they are reached
+                    readAhead.release(reserved);
+                    break;
+                }
+                entries.next();
+                pending.add(segment);
+            }
+        }
+
+        private Segment openSegment(SegmentRange range, long reserved) throws IOException {
+            getConfig().getMetrics().counter("large_object_segment_fetches_total",
+                    "Segments fetched from the backend for large object GETs.", "").increment();
+            ManifestEntry entry = range.entry;
+            Response resp;
+            if (range.isWholeSegment()) {
+                logger.info("opening {}/{}", entry.container, entry.object);
+                resp = getObject(blobStore, entry.container, entry.object, GetOptions.NONE, null, false, null);
+            } else {
+                // only fetch the bytes that are sent to the client
+                logger.info("opening {}", range);
+                long last = range.offset + range.length - 1;
+                resp = getObject(blobStore, entry.container, entry.object,
+                        new GetOptions().range(range.offset, last), ImmutableList.of(new Pair<>(range.offset, last)),
+                        false, null);
+            }
             if (!resp.getStatusInfo().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
                 resp.close();
                 throw new ClientErrorException(Response.Status.CONFLICT);
             }
-            availableBytes = Long.parseLong(resp.getHeaderString(HttpHeaders.CONTENT_LENGTH));
-            currentStream = (InputStream) resp.getEntity();
-            currentResp = resp;
+            long length = Long.parseLong(resp.getHeaderString(HttpHeaders.CONTENT_LENGTH));
             String etag = resp.getHeaderString(HttpHeaders.ETAG);
 
-            if (entry.size_bytes != availableBytes || !eTagsEqual(entry.etag, etag)) {
-                logger.error("409 conflict: {}/{} {} {} != {} {}",
-                        entry.container, entry.object, entry.etag, entry.size_bytes,
-                        etag, availableBytes);
+            // a GET reports the MD5 of a segment uploaded in parts, which a listing may not, so only its size is checked
+            if (range.length != length ||
+                    !(eTagsEqual(entry.etag, etag) || MultipartUploader.isMultipartETag(entry.etag))) {
+                logger.error("409 conflict: {} {} {} != {} {}",
+                        range, entry.etag, range.length, etag, length);
+                resp.close();
                 throw new ClientErrorException(Response.Status.CONFLICT);
             }
+
+            InputStream stream = (InputStream) resp.getEntity();
+            // nested manifests do their own read-ahead, buffering them here could starve the pool
+            if (reserved > 0 && !(stream instanceof ManifestObjectInputStream)) {
+                byte[] buffer = new byte[(int) length];
+                try (InputStream in = stream) {
+                    ByteStreams.readFully(in, buffer);
+                } finally {
+                    resp.close();
+                }
+                return new Segment(null, new ByteArrayInputStream(buffer), length, reserved);
+            }
+            readAhead.release(reserved);
+            return new Segment(resp, stream, length, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeCurrent();
+            pending.forEach(PendingSegment::discard);
+            pending.clear();
         }
 
         @Override
@@ -1296,9 +1679,110 @@ public final class ObjectResource extends BlobStoreResource {
                 }
             } while (true);
         }
+
+        private final class Segment {
+            private final Response resp;
+            private final InputStream stream;
+            private final long length;
+            private final long reserved;
+
+            Segment(Response resp, InputStream stream, long length, long reserved) {
+                this.resp = resp;
+                this.stream = requireNonNull(stream);
+                this.length = length;
+                this.reserved = reserved;
+            }
+
+            void close() {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    logger.debug("error closing segment", e);
+                }
+                if (resp != null) {
+                    resp.close();
+                }
+                readAhead.release(reserved);
+            }
+        }
+
+        private final class PendingSegment {
+            private final SegmentRange entry;
+            private final long reserved;
+            private volatile boolean discarded;
+            private CompletableFuture<Segment> future;
+
+            PendingSegment(SegmentRange entry, long reserved) {
+                this.entry = requireNonNull(entry);
+                this.reserved = reserved;
+            }
+
+            Segment fetch() {
+                if (discarded) {
+                    readAhead.release(reserved);
+                    return null;
+                }
+                try {
+                    return openSegment(entry, reserved);
+                } catch (IOException e) {
+                    readAhead.release(reserved);
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    readAhead.release(reserved);
+                    throw e;
+                }
+            }
+
+            Segment await() throws IOException {
+                try {
+                    return future.join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) cause).getCause();
+                    }
+                    throw propagate(cause);
+                }
+            }
+
+            void discard() {
+                discarded = true;
+                future.thenAccept(segment -> {
+                    if (segment != null) {
+                        segment.close();
+                    }
+                });
+            }
+        }
+    }
+
+    /** Bytes {@code offset} to {@code offset + length} of a segment. */
+    private static final class SegmentRange {
+        private final ManifestEntry entry;
+        private final long offset;
+        private final long length;
+
+        SegmentRange(ManifestEntry entry, long offset, long length) {
+            this.entry = requireNonNull(entry);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        boolean isWholeSegment() {
+            return offset == 0 && length == entry.size_bytes;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("object", entry.container + "/" + entry.object)
+                    .add("offset", offset)
+                    .add("length", length)
+                    .toString();
+        }
     }
 
-    private static class ManifestEntry {
+    static class ManifestEntry {
         @JsonProperty String etag;
         @JsonProperty long size_bytes;
         String container;
@@ -1310,6 +1794,10 @@ public final class ObjectResource extends BlobStoreResource {
             object = param.getSecond();
         }
 
+        @JsonProperty String getPath() {
+            return "/" + container + "/" + object;
+        }
+
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class BackendExecutorTest {
+    private BackendExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new BackendExecutor(8, 0, 2, false);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRequestConcurrency() {
+        List<Integer> items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+
+        executor.forEach(items, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+            running.decrementAndGet();
+            done.incrementAndGet();
+        });
+
+        assertThat(done.get()).isEqualTo(items.size());
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        assertThat(executor.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailure() {
+        List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        AtomicInteger done = new AtomicInteger();
+        try {
+            executor.forEach(items, i -> {
+                if (i == 3) {
+                    throw new IllegalStateException("boom");
+                }
+                done.incrementAndGet();
+            });
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("boom");
+        }
+        assertThat(done.get()).isLessThan(items.size() - 1);
+        assertThat(executor.getFailedCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Properties;
+
+import org.jclouds.Constants;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class ContextPoolTest {
+    private Properties properties;
+    private ContextPool pool;
+
+    @Before
+    public void setUp() {
+        properties = new Properties();
+        properties.setProperty(Constants.PROPERTY_PROVIDER, "transient");
+        properties.setProperty(Constants.PROPERTY_IDENTITY, "identity");
+        properties.setProperty(Constants.PROPERTY_CREDENTIAL, "credential");
+        // transient contexts are not evicted unless asked to
+        pool = new ContextPool(properties, 2, 60, true);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testReuse() {
+        pool.warm();
+        assertThat(pool.size()).isEqualTo(1);
+
+        BlobStoreContext context = pool.get("identity", "credential");
+        assertThat(pool.get("identity", "credential")).isSameAs(context);
+        assertThat(pool.getStats().loadCount()).isEqualTo(1);
+        assertThat(pool.getStats().hitCount()).isEqualTo(2);
+
+        assertThat(pool.get("identity", "other-credential")).isNotSameAs(context);
+        assertThat(pool.get("other-identity", "credential")).isNotSameAs(context);
+        assertThat(pool.getStats().loadCount()).isEqualTo(3);
+        assertThat(pool.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictedContextOpenUntilRequestFinishes() {
+        RequestTrace trace = new RequestTrace(null);
+        RequestTrace.setCurrent(trace);
+        BlobStoreContext context;
+        try {
+            context = pool.get("identity", "credential");
+        } finally {
+            RequestTrace.setCurrent(null);
+        }
+        // evict the context in use by the request
+        pool.get("identity-2", "credential");
+        pool.get("identity-3", "credential");
+        assertThat(pool.getStats().evictionCount()).isEqualTo(1);
+        assertThat(pool.getOpenCount()).isEqualTo(3);
+        assertThat(context.getBlobStore().list()).isEmpty();
+
+        trace.finish();
+        assertThat(pool.getOpenCount()).isEqualTo(2);
+        assertThat(pool.get("identity", "credential")).isNotSameAs(context);
+    }
+
+    @Test
+    public void testHandleReusedUntilEvicted() {
+        ContextPool.Handle handle = pool.handle("identity", "credential");
+        BlobStoreContext context = handle.get();
+        assertThat(handle.get()).isSameAs(context);
+        assertThat(pool.getStats().loadCount()).isEqualTo(1);
+        assertThat(pool.getStats().requestCount()).isEqualTo(1);
+
+        pool.get("identity-2", "credential");
+        pool.get("identity-3", "credential");
+        assertThat(pool.getStats().evictionCount()).isEqualTo(1);
+        BlobStoreContext rebuilt = handle.get();
+        assertThat(rebuilt).isNotSameAs(context);
+        assertThat(handle.get()).isSameAs(rebuilt);
+    }
+
+    @Test
+    public void testLocalProviderNotEvicted() {
+        pool.shutdown();
+        pool = new ContextPool(properties, 1, 60);
+        BlobStoreContext context = pool.get("identity", "credential");
+        context.getBlobStore().createContainerInLocation(null, "container");
+        pool.get("identity-2", "credential");
+        assertThat(pool.getStats().evictionCount()).isEqualTo(0);
+        assertThat(pool.get("identity", "credential").getBlobStore().containerExists("container")).isTrue();
+    }
+
+    @Test
+    public void testShutdown() {
+        pool.get("identity", "credential");
+        pool.shutdown();
+        assertThat(pool.size()).isEqualTo(0);
+        assertThat(pool.getOpenCount()).isEqualTo(0);
+    }
+}
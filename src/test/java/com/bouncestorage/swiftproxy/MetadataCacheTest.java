@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.util.ForwardingBlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MetadataCacheTest {
+    private static final String CONTAINER = "container";
+    private BlobStoreContext context;
+    private BlobStore backend;
+    private MetadataCache cache;
+    private BlobStore blobStore;
+
+    @Before
+    public void setUp() {
+        context = ContextBuilder.newBuilder("transient").build(BlobStoreContext.class);
+        backend = context.getBlobStore();
+        cache = new MetadataCache(100, 60, true);
+        blobStore = cache.decorate("identity", backend);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testNegativeCaching() {
+        assertThat(blobStore.containerExists(CONTAINER)).isFalse();
+        // changes made behind the cache's back are not seen until the entry expires
+        backend.createContainerInLocation(null, CONTAINER);
+        assertThat(blobStore.containerExists(CONTAINER)).isFalse();
+        assertThat(cache.getStats().hitCount()).isEqualTo(1);
+
+        blobStore.createContainerInLocation(null, CONTAINER);
+        assertThat(blobStore.containerExists(CONTAINER)).isTrue();
+    }
+
+    @Test
+    public void testWritesInvalidate() {
+        blobStore.createContainerInLocation(null, CONTAINER);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNull();
+
+        blobStore.putBlob(CONTAINER, blobStore.blobBuilder("blob").payload("foo").build());
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getSize()).isEqualTo(3);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getSize()).isEqualTo(3);
+        assertThat(cache.getStats().hitCount()).isEqualTo(1);
+
+        blobStore.removeBlob(CONTAINER, "blob");
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNull();
+
+        blobStore.putBlob(CONTAINER, blobStore.blobBuilder("blob").payload("foo").build());
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNotNull();
+        blobStore.deleteContainer(CONTAINER);
+        assertThat(blobStore.containerExists(CONTAINER)).isFalse();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidatedWhileLoading() {
+        blobStore.createContainerInLocation(null, CONTAINER);
+        // the object is written through the proxy after the backend answered the lookup, but before it is cached
+        blobStore = cache.decorate("identity", new ForwardingBlobStore(backend) {
+            @Override
+            public BlobMetadata blobMetadata(String container, String name) {
+                BlobMetadata meta = super.blobMetadata(container, name);
+                blobStore.putBlob(CONTAINER, blobStore.blobBuilder(name).payload("foo").build());
+                return meta;
+            }
+        });
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getSize()).isEqualTo(3);
+    }
+
+    @Test
+    public void testFreshBlobMetadata() {
+        blobStore.createContainerInLocation(null, CONTAINER);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNull();
+        backend.putBlob(CONTAINER, backend.blobBuilder("blob").payload("foo").build());
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob")).isNull();
+
+        assertThat(cache.getFreshBlobMetadata(blobStore, CONTAINER, "blob").getSize()).isEqualTo(3);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getSize()).isEqualTo(3);
+    }
+
+    @Test
+    public void testDisabled() {
+        cache = new MetadataCache(0, 60, true);
+        assertThat(cache.decorate("identity", backend)).isSameAs(backend);
+        assertThat(cache.isEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.ContainerNotFoundException;
+import org.junit.Test;
+
+public final class MetricsTest {
+    @Test
+    public void testHistogram() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram histogram = metrics.histogram("test_seconds", "Test.", Metrics.labels("op", "a"));
+        for (int i = 0; i < 98; i++) {
+            histogram.observe(TimeUnit.MICROSECONDS.toNanos(800));
+        }
+        histogram.observe(TimeUnit.SECONDS.toNanos(2));
+        histogram.observe(TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.quantile(0.5)).isBetween(0.0005, 0.001);
+        assertThat(histogram.quantile(0.99)).isBetween(1.0, 2.5);
+
+        String text = metrics.toPrometheus();
+        assertThat(text)
+                .contains("# TYPE swiftproxy_test_seconds histogram\n")
+                .contains("swiftproxy_test_seconds_bucket{op=\"a\",le=\"0.001\"} 98\n")
+                .contains("swiftproxy_test_seconds_bucket{op=\"a\",le=\"+Inf\"} 100\n")
+                .contains("swiftproxy_test_seconds_count{op=\"a\"} 100\n");
+        assertThat(metrics.snapshot()).containsKey("swiftproxy_test_seconds_p99{op=a}");
+    }
+
+    @Test
+    public void testInstrument() {
+        Metrics metrics = new Metrics();
+        try (BlobStoreContext context = ContextBuilder.newBuilder("transient").build(BlobStoreContext.class)) {
+            BlobStore blobStore = metrics.instrument(context.getBlobStore());
+            blobStore.createContainerInLocation(null, "container");
+            assertThat(blobStore.containerExists("container")).isTrue();
+            try {
+                blobStore.getBlob("missing", "blob");
+                fail("expected ContainerNotFoundException");
+            } catch (ContainerNotFoundException e) {
+                // expected, the original exception is rethrown
+            }
+        }
+
+        String text = metrics.toPrometheus();
+        assertThat(text)
+                .contains("swiftproxy_backend_call_duration_seconds_count{call=\"containerExists\"} 1\n")
+                .contains("swiftproxy_backend_call_errors_total{call=\"getBlob\"} 1\n")
+                .contains("swiftproxy_backend_call_errors_total{call=\"containerExists\"} 0\n");
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.util.ForwardingBlobStore;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MultipartUploaderTest {
+    private static final String CONTAINER = "container";
+
+    private BlobStoreContext context;
+    private BlobStore blobStore;
+    private MultipartUploader uploader;
+    private byte[] data;
+
+    @Before
+    public void setup() {
+        context = ContextBuilder.newBuilder("transient").build(BlobStoreContext.class);
+        blobStore = context.getBlobStore();
+        blobStore.createContainerInLocation(null, CONTAINER);
+        uploader = new MultipartUploader(1, 1000, 2, 3000, 0, false);
+        data = new byte[5500];
+        new Random().nextBytes(data);
+    }
+
+    @After
+    public void tearDown() {
+        uploader.shutdown();
+        context.close();
+    }
+
+    @Test
+    public void testAccepts() {
+        assertThat(uploader.accepts(blobStore, 0)).isFalse();
+        assertThat(uploader.accepts(blobStore, 1)).isTrue();
+        assertThat(uploader.accepts(blobStore, -1)).isTrue();
+        assertThat(new MultipartUploader(0, 1000, 2, 3000, 0, false).accepts(blobStore, 1 << 30)).isFalse();
+        // transient takes parts of at most 5 MB
+        assertThat(new MultipartUploader(1, 16 << 20, 2, 32 << 20, 0, false).accepts(blobStore, 1 << 30)).isFalse();
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        HashCode md5 = Hashing.md5().hashBytes(data);
+        assertThat(put(new ByteArrayInputStream(data), data.length, md5)).isEqualTo(md5.toString());
+        assertThat(read()).isEqualTo(data);
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getUserMetadata())
+                .containsEntry(MultipartUploader.ETAG_METADATA, md5.toString());
+        assertThat(uploader.getUploadCount()).isEqualTo(1);
+        assertThat(uploader.getPartCount()).isEqualTo(6);
+        assertThat(uploader.getBuffersInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMultipartUploadWithoutMD5() throws Exception {
+        String eTag = put(new ByteArrayInputStream(data), -1, null);
+        assertThat(read()).isEqualTo(data);
+        // the MD5 is only known once the object is complete, so the backend's ETag stands
+        assertThat(eTag).isEqualTo(blobStore.blobMetadata(CONTAINER, "blob").getETag());
+        assertThat(blobStore.blobMetadata(CONTAINER, "blob").getUserMetadata())
+                .doesNotContainKey(MultipartUploader.ETAG_METADATA);
+        assertThat(uploader.getUploadCount()).isEqualTo(1);
+        assertThat(uploader.getPartCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void testSinglePart() throws Exception {
+        byte[] small = Arrays.copyOf(data, 300);
+        put(new ByteArrayInputStream(small), -1, Hashing.md5().hashBytes(small));
+        assertThat(read()).isEqualTo(small);
+        assertThat(uploader.getUploadCount()).isEqualTo(0);
+        assertThat(uploader.getBuffersInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void testETagMismatch() throws Exception {
+        try {
+            put(new ByteArrayInputStream(data), -1, Hashing.md5().hashBytes(new byte[1]));
+            fail("expected ClientErrorException");
+        } catch (ClientErrorException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(422);
+        }
+        assertAborted();
+    }
+
+    @Test
+    public void testTruncatedBody() {
+        try {
+            put(new ByteArrayInputStream(data), data.length + 1, Hashing.md5().hashBytes(data));
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("5500 of 5501 bytes");
+        }
+        assertAborted();
+    }
+
+    @Test
+    public void testBackendFailure() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_ERROR_RATE + ".uploadMultipartPart", "1");
+        blobStore = SimulatedBackend.fromProperties(properties).decorate(blobStore);
+        try {
+            put(new ByteArrayInputStream(data), data.length, Hashing.md5().hashBytes(data));
+            fail("expected HttpResponseException");
+        } catch (HttpResponseException e) {
+            assertThat(e.getResponse().getStatusCode()).isEqualTo(500);
+        }
+        assertAborted();
+    }
+
+    @Test
+    public void testWholeParts() throws Exception {
+        // every buffer holds a part still being uploaded when the end of the body is reached
+        blobStore = new ForwardingBlobStore(blobStore) {
+            @Override
+            public MultipartPart uploadMultipartPart(MultipartUpload mpu, int partNumber, Payload payload) {
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return super.uploadMultipartPart(mpu, partNumber, payload);
+            }
+        };
+        uploader.shutdown();
+        uploader = new MultipartUploader(1, 1000, 2, 2000, 1, false);
+        byte[] whole = Arrays.copyOf(data, 2000);
+        HashCode md5 = Hashing.md5().hashBytes(whole);
+        put(new ByteArrayInputStream(whole), whole.length, md5);
+        put(new ByteArrayInputStream(whole), -1, md5);
+        assertThat(read()).isEqualTo(whole);
+        assertThat(uploader.getPartCount()).isEqualTo(4);
+        assertThat(uploader.getBufferTimeoutCount()).isEqualTo(0);
+        assertThat(uploader.getBuffersInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBufferTimeout() throws Exception {
+        uploader.shutdown();
+        uploader = new MultipartUploader(1, 128 * 1024, 2, 128 * 1024, 1, false);
+        byte[] large = new byte[100 * 1024];
+        CountDownLatch finish = new CountDownLatch(1);
+        // a slow client holds the only buffer once it has sent more than a small body
+        InputStream slow = new InputStream() {
+            private final InputStream in = new ByteArrayInputStream(large);
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n == -1) {
+                    try {
+                        finish.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return n;
+            }
+        };
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = client.submit(() -> put(slow, -1, Hashing.md5().hashBytes(large)));
+            while (uploader.getBuffersInUse() == 0) {
+                Thread.sleep(10);
+            }
+
+            byte[] small = Arrays.copyOf(data, 300);
+            put(new ByteArrayInputStream(small), -1, Hashing.md5().hashBytes(small));
+            try {
+                put(new ByteArrayInputStream(large), -1, Hashing.md5().hashBytes(large));
+                fail("expected ServiceUnavailableException");
+            } catch (ServiceUnavailableException e) {
+                assertThat(uploader.getBufferTimeoutCount()).isEqualTo(1);
+            }
+
+            finish.countDown();
+            assertThat(first.get()).isNotNull();
+        } finally {
+            finish.countDown();
+            client.shutdown();
+        }
+        assertThat(read()).isEqualTo(large);
+        assertThat(uploader.getBuffersInUse()).isEqualTo(0);
+    }
+
+    private String put(InputStream in, long contentLength, HashCode contentMD5) throws IOException {
+        Blob blob = blobStore.blobBuilder("blob").payload(in).build();
+        return uploader.putBlob(blobStore, CONTAINER, blob, in, contentLength, contentMD5);
+    }
+
+    private byte[] read() throws IOException {
+        try (InputStream in = blobStore.getBlob(CONTAINER, "blob").getPayload().openStream()) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private void assertAborted() {
+        assertThat(blobStore.blobExists(CONTAINER, "blob")).isFalse();
+        assertThat(uploader.getAbortCount()).isEqualTo(1);
+        assertThat(uploader.getBuffersInUse()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+public final class SignedTokensTest {
+    private static final String SECRET = "0123456789abcdef-shared-secret";
+    private static final Clock NOW = Clock.fixed(Instant.ofEpochSecond(1000000), ZoneOffset.UTC);
+
+    @Test
+    public void testRoundTrip() {
+        String token = new SignedTokens(SECRET, 60, NOW).sign("test:tester", "testing");
+        assertThat(token).startsWith("AUTH_tk").doesNotContain("testing");
+
+        SignedTokens.Claims claims = new SignedTokens(SECRET, 60, NOW).verify(token);
+        assertThat(claims.identity).isEqualTo("test:tester");
+        assertThat(claims.getCredential()).isEqualTo("testing");
+    }
+
+    @Test
+    public void testRejected() {
+        SignedTokens tokens = new SignedTokens(SECRET, 60, NOW);
+        String token = tokens.sign("test:tester", "testing");
+
+        assertThat(new SignedTokens(SECRET + "x", 60, NOW).verify(token)).isNull();
+        assertThat(new SignedTokens(SECRET, 60, Clock.offset(NOW, Duration.ofSeconds(60))).verify(token))
+                .isNull();
+        // the low bits of the last base64 character are padding, so change the one before it
+        int i = token.length() - 2;
+        char c = token.charAt(i);
+        assertThat(tokens.verify(token.substring(0, i) + (c == 'A' ? 'B' : 'A') + token.substring(i + 1)))
+                .isNull();
+        assertThat(tokens.verify("AUTH_tk" + "garbage")).isNull();
+        assertThat(tokens.verify("AUTH_tk.")).isNull();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.http.HttpResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class SimulatedBackendTest {
+    private BlobStoreContext context;
+
+    @Before
+    public void setup() {
+        context = ContextBuilder.newBuilder("transient").build(BlobStoreContext.class);
+        context.getBlobStore().createContainerInLocation(null, "container");
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertThat(SimulatedBackend.fromProperties(new Properties())).isNull();
+        assertThat(SimulatedBackend.fromProperties(null)).isNull();
+    }
+
+    @Test
+    public void testLatency() {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_LATENCY, "0");
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_LATENCY + ".containerExists", "50");
+        BlobStore blobStore = SimulatedBackend.fromProperties(properties).decorate(context.getBlobStore());
+
+        long start = System.nanoTime();
+        assertThat(blobStore.containerExists("container")).isTrue();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testErrorsAndThrottling() {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_ERROR_RATE + ".getBlob", "1");
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_THROTTLE_RATE + ".blobMetadata", "1");
+        BlobStore blobStore = SimulatedBackend.fromProperties(properties).decorate(context.getBlobStore());
+
+        blobStore.putBlob("container", blobStore.blobBuilder("blob").payload("foo").build());
+        assertStatus(() -> blobStore.getBlob("container", "blob"), 500);
+        assertStatus(() -> blobStore.blobMetadata("container", "blob"), 503);
+    }
+
+    @Test
+    public void testBandwidth() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_BANDWIDTH, "100000");
+        BlobStore blobStore = SimulatedBackend.fromProperties(properties).decorate(context.getBlobStore());
+
+        byte[] data = new byte[50000];
+        long start = System.nanoTime();
+        blobStore.putBlob("container", blobStore.blobBuilder("blob").payload(data).build());
+        try (InputStream in = blobStore.getBlob("container", "blob").getPayload().openStream()) {
+            byte[] buffer = new byte[1000];
+            int n;
+            long total = 0;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+            }
+            assertThat(total).isEqualTo(data.length);
+        }
+        // 50 KB in each direction at 100 KB/s
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void testTransferNanos() {
+        assertThat(SimulatedBackend.transferNanos(150, 100)).isEqualTo(1500000000L);
+        // past 2^63 / 10^9 bytes the product with the nanoseconds of a second overflows
+        long bytes = 10L * 1000 * 1000 * 1000;
+        assertThat(SimulatedBackend.transferNanos(bytes, 1000 * 1000)).isEqualTo(10000000000000L);
+        assertThat(SimulatedBackend.transferNanos(bytes + 1, 3)).isEqualTo(3333333333666666666L);
+    }
+
+    @Test
+    public void testUnknownProperty() {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_SIMULATE_LATENCY + ".getblob", "10");
+        try {
+            SimulatedBackend.fromProperties(properties);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("getblob");
+        }
+    }
+
+    private static void assertStatus(Runnable call, int status) {
+        try {
+            call.run();
+            fail("expected HttpResponseException");
+        } catch (HttpResponseException e) {
+            assertThat(e.getResponse().getStatusCode()).isEqualTo(status);
+        }
+    }
+}
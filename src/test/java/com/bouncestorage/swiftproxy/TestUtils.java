@@ -43,11 +43,17 @@ public final class TestUtils {
     }
 
     public static SwiftProxy setupAndStartProxy() throws Exception {
+        return setupAndStartProxy(new Properties());
+    }
+
+    /** Start a proxy configured by {@code swiftproxy.conf} with {@code overrides} applied. */
+    public static SwiftProxy setupAndStartProxy(Properties overrides) throws Exception {
         Properties properties = new Properties();
         try (InputStream is = Resources.asByteSource(Resources.getResource(
                 "swiftproxy.conf")).openStream()) {
             properties.load(is);
         }
+        properties.putAll(overrides);
 
         String provider = properties.getProperty(Constants.PROPERTY_PROVIDER);
         String credential = properties.getProperty(Constants.PROPERTY_CREDENTIAL);
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Module;
+import com.sun.net.httpserver.HttpServer;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class TransIdHttpModuleTest {
+    private HttpServer server;
+    /** The {@code X-Trans-Id} of each request the backend received, or an empty string if there was none. */
+    private final BlockingQueue<String> transIds = new LinkedBlockingQueue<>();
+    private BlobStoreContext context;
+
+    @Before
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String transId = exchange.getRequestHeaders().getFirst(RequestMetrics.TRANS_ID_HEADER);
+            transIds.add(transId == null ? "" : transId);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+
+        Properties properties = new Properties();
+        properties.setProperty("jclouds.s3.virtual-host-buckets", "false");
+        context = ContextBuilder.newBuilder("s3")
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort())
+                .credentials("identity", "credential")
+                .overrides(properties)
+                .modules(ImmutableSet.<Module>of(new TransIdHttpModule()))
+                .build(BlobStoreContext.class);
+    }
+
+    @After
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testTransIdSentToBackend() throws Exception {
+        BlobStore blobStore = context.getBlobStore();
+        RequestTrace trace = new RequestTrace(null);
+        RequestTrace previous = RequestTrace.setCurrent(trace);
+        try {
+            assertThat(blobStore.containerExists("container")).isTrue();
+        } finally {
+            RequestTrace.setCurrent(previous);
+        }
+        assertThat(transIds.poll(10, TimeUnit.SECONDS)).isEqualTo(trace.getTransId());
+
+        assertThat(blobStore.containerExists("container")).isTrue();
+        assertThat(transIds.poll(10, TimeUnit.SECONDS)).isEmpty();
+    }
+}
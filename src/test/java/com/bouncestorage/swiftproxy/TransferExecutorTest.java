@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class TransferExecutorTest {
+    private TransferExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new TransferExecutor(1, 2, 60, false);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testMaxSuspended() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        FakeAsyncResponse first = new FakeAsyncResponse();
+        FakeAsyncResponse second = new FakeAsyncResponse();
+        FakeAsyncResponse third = new FakeAsyncResponse();
+        executor.resume(first, () -> {
+            awaitUninterruptibly(latch);
+            return Response.ok().build();
+        });
+        executor.resume(second, () -> Response.noContent().build());
+        executor.resume(third, () -> Response.noContent().build());
+
+        assertThat(third.getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(executor.getSuspended()).isEqualTo(2);
+        assertThat(executor.getRejectedCount()).isEqualTo(1);
+
+        latch.countDown();
+        assertThat(first.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(second.getStatus()).isEqualTo(Response.Status.NO_CONTENT.getStatusCode());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        FakeAsyncResponse first = new FakeAsyncResponse();
+        FakeAsyncResponse second = new FakeAsyncResponse();
+        AtomicBoolean called = new AtomicBoolean();
+        executor.resume(first, () -> {
+            awaitUninterruptibly(latch);
+            return Response.ok().build();
+        });
+        executor.resume(second, () -> {
+            called.set(true);
+            return Response.ok().build();
+        });
+
+        while (executor.getActive() == 0) {
+            Thread.sleep(1);
+        }
+
+        // the second request is still queued behind the first one when it times out
+        second.timeoutHandler.handleTimeout(second);
+        assertThat(second.getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(executor.getTimedOutCount()).isEqualTo(1);
+
+        // the first request has started, so it is allowed to keep running
+        first.timeoutHandler.handleTimeout(first);
+        latch.countDown();
+        assertThat(first.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(called.get()).isFalse();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class FakeAsyncResponse implements AsyncResponse {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private TimeoutHandler timeoutHandler;
+
+        int getStatus() throws Exception {
+            return ((Response) result.get(10, TimeUnit.SECONDS)).getStatus();
+        }
+
+        @Override
+        public boolean resume(Object response) {
+            return result.complete(response);
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            return result.completeExceptionally(response);
+        }
+
+        @Override
+        public boolean cancel() {
+            return result.cancel(false);
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            return cancel();
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            return cancel();
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return !result.isDone();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            timeoutHandler = handler;
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return Collections.emptyMap();
+        }
+    }
+}
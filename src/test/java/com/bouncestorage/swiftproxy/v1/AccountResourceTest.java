@@ -18,6 +18,8 @@ package com.bouncestorage.swiftproxy.v1;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
@@ -81,7 +83,7 @@ public final class AccountResourceTest {
     public void testBulkDelete() throws Exception {
         String authToken = TestUtils.createContainer(target, CONTAINER);
 
-        String[] removeObjects = {"/test/bar", "/test"};
+        String[] removeObjects = {"/test/bar", "/test", "/" + CONTAINER};
         Response response = target.path(TestUtils.ACCOUNT_PATH)
                 // swift actually sends ?bulk-delete and this sends ?bulk-delete=, but
                 // that's the closest we can get
@@ -91,10 +93,75 @@ public final class AccountResourceTest {
                 .post(Entity.entity(Joiner.on("\n").join(removeObjects), MediaType.TEXT_PLAIN));
         assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
         AccountResource.BulkDeleteResult result = response.readEntity(AccountResource.BulkDeleteResult.class);
+        // the object and the container that do not exist are not found, the empty container is deleted
         assertThat(result.numberDeleted).isEqualTo(1);
+        assertThat(result.numberNotFound).isEqualTo(2);
+        assertThat(listContainers(Optional.of(authToken))).isEmpty();
+    }
+
+    @Test
+    public void testBulkDeleteObjectsAndContainer() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+        List<String> removeObjects = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String object = "/" + CONTAINER + "/object-" + i;
+            Response response = target.path(TestUtils.ACCOUNT_PATH + object).request()
+                    .header("X-Auth-Token", authToken)
+                    .put(Entity.entity("foo", MediaType.APPLICATION_OCTET_STREAM));
+            assertThat(response.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+            removeObjects.add(object);
+        }
+        removeObjects.add("");
+        removeObjects.add("/" + CONTAINER);
+
+        Response response = target.path(TestUtils.ACCOUNT_PATH)
+                .queryParam("bulk-delete", "")
+                .request()
+                .header("X-Auth-Token", authToken)
+                .post(Entity.entity(Joiner.on("\n").join(removeObjects), MediaType.TEXT_PLAIN));
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        AccountResource.BulkDeleteResult result = response.readEntity(AccountResource.BulkDeleteResult.class);
+        assertThat(result.numberDeleted).isEqualTo(11);
+        assertThat(result.numberNotFound).isEqualTo(0);
+        assertThat(listContainers(Optional.of(authToken))).isEmpty();
+    }
+
+    @Test
+    public void testBulkDeleteMissingObject() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+
+        Response response = target.path(TestUtils.ACCOUNT_PATH)
+                .queryParam("bulk-delete", "")
+                .request()
+                .header("X-Auth-Token", authToken)
+                .post(Entity.entity("/" + CONTAINER + "/missing", MediaType.TEXT_PLAIN));
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        AccountResource.BulkDeleteResult result = response.readEntity(AccountResource.BulkDeleteResult.class);
+        assertThat(result.numberDeleted).isEqualTo(0);
         assertThat(result.numberNotFound).isEqualTo(1);
     }
 
+    @Test
+    public void testBulkDeleteNonEmptyContainer() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+        Response response = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/object").request()
+                .header("X-Auth-Token", authToken)
+                .put(Entity.entity("foo", MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+        response = target.path(TestUtils.ACCOUNT_PATH)
+                .queryParam("bulk-delete", "")
+                .request()
+                .header("X-Auth-Token", authToken)
+                .post(Entity.entity("/" + CONTAINER, MediaType.TEXT_PLAIN));
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        AccountResource.BulkDeleteResult result = response.readEntity(AccountResource.BulkDeleteResult.class);
+        assertThat(result.responseStatus).isEqualTo(Response.Status.BAD_REQUEST.toString());
+        assertThat(result.numberDeleted).isEqualTo(0);
+        assertThat(result.errors).containsExactly(Arrays.asList(CONTAINER, "409 Conflict"));
+        assertThat(listContainers(Optional.of(authToken))).containsOnly(new AccountResource.ContainerEntry(CONTAINER));
+    }
+
     List<AccountResource.ContainerEntry> listContainers() throws Exception {
         return listContainers(Optional.empty());
     }
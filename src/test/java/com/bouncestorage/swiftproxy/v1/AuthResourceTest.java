@@ -16,10 +16,16 @@
 
 package com.bouncestorage.swiftproxy.v1;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Properties;
 
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
 import com.bouncestorage.swiftproxy.SwiftProxy;
 import com.bouncestorage.swiftproxy.TestUtils;
 import com.google.common.io.Resources;
@@ -75,4 +81,39 @@ public final class AuthResourceTest {
                 .build(BlobStoreContext.class);
         context.getBlobStore().list();
     }
+
+    @Test
+    public void testUnknownToken() throws Exception {
+        Response resp = ClientBuilder.newClient().target(endpoint)
+                .path(TestUtils.ACCOUNT_PATH + "/container").request()
+                .header("x-auth-token", "AUTH_tk00000000000000000000000000000000")
+                .get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.UNAUTHORIZED.getStatusCode());
+    }
+
+    @Test
+    public void testSignedTokenOnAnotherProxy() throws Exception {
+        properties.setProperty(SwiftProxy.PROPERTY_AUTH_TOKEN_SECRET, "a secret shared by the proxies");
+        SwiftProxy first = SwiftProxy.Builder.builder().overrides(properties).build();
+        SwiftProxy second = SwiftProxy.Builder.builder().overrides(properties).build();
+        try {
+            first.start();
+            second.start();
+            String authToken = TestUtils.getAuthToken(ClientBuilder.newClient().target(first.getEndpoint()));
+
+            WebTarget target = ClientBuilder.newClient().target(second.getEndpoint());
+            Response resp = target.path(TestUtils.ACCOUNT_PATH + "/container").request()
+                    .header("x-auth-token", authToken)
+                    .get();
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+            resp = target.path(TestUtils.ACCOUNT_PATH + "/container").request()
+                    .header("x-auth-token", authToken + "A")
+                    .get();
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.UNAUTHORIZED.getStatusCode());
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
 }
@@ -74,6 +74,7 @@ public final class ContainerResourceTest {
 
         resp = headContainer(CONTAINER, Optional.of(authToken));
         assertThat(resp.getStatus()).isEqualTo(Response.Status.NO_CONTENT.getStatusCode());
+        assertThat(resp.getHeaderString("X-Container-Object-Count")).isEqualTo("0");
     }
 
     @Test
@@ -91,9 +92,48 @@ public final class ContainerResourceTest {
 
         resp = getContainer(CONTAINER, Optional.of(authToken));
         assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        // totals are unknown while the listing streams
+        assertThat(resp.getHeaderString("X-Container-Object-Count")).isNull();
+        assertThat(resp.getHeaderString("X-Container-Bytes-Used")).isNull();
         assertThat(resp.readEntity(String.class)).isEqualTo("blob\n");
     }
 
+    @Test
+    public void testListContainerFormats() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+
+        Response resp = getContainer(CONTAINER, Optional.of(authToken));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NO_CONTENT.getStatusCode());
+
+        for (String name : new String[]{"a b", "blob"}) {
+            resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/" + name).request()
+                    .header("x-auth-token", authToken)
+                    .put(Entity.entity("foo".getBytes(), MediaType.APPLICATION_OCTET_STREAM));
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        }
+
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER).queryParam("format", "json").request()
+                .header("x-auth-token", authToken)
+                .get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.getMediaType().isCompatible(MediaType.APPLICATION_JSON_TYPE)).isTrue();
+        assertThat(resp.readEntity(String.class))
+                .startsWith("[{\"name\":\"a b\",\"hash\":\"acbd18db4cc2f85cedef654fccc4a4d8\",\"bytes\":3,")
+                .contains("{\"name\":\"blob\",")
+                .endsWith("}]");
+
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER).queryParam("format", "xml")
+                .queryParam("limit", 1).request()
+                .header("x-auth-token", authToken)
+                .get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(String.class))
+                .contains("<container name=\"" + CONTAINER + "\"><object><name>a b</name>")
+                .contains("<bytes>3</bytes><content_type>application/octet-stream</content_type>")
+                .doesNotContain("blob")
+                .endsWith("</object></container>");
+    }
+
     Response headContainer(String container, Optional<String> authToken) {
         return target.path(TestUtils.ACCOUNT_PATH + "/" + container).request()
                 .header("x-auth-token", authToken.orElseGet(() -> TestUtils.getAuthToken(target)))
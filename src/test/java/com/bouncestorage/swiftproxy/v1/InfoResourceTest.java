@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+
+import com.bouncestorage.swiftproxy.SwiftProxy;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Resources;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class InfoResourceTest {
+    private Properties properties;
+    private SwiftProxy proxy;
+
+    @Before
+    public void setup() throws Exception {
+        properties = new Properties();
+        try (InputStream is = Resources.asByteSource(Resources.getResource(
+                "swiftproxy.conf")).openStream()) {
+            properties.load(is);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+    }
+
+    @Test
+    public void testServerSettings() throws Exception {
+        properties.setProperty(SwiftProxy.PROPERTY_SERVER_WORKER_THREADS, "4");
+        properties.setProperty(SwiftProxy.PROPERTY_SERVER_KEEP_ALIVE_TIMEOUT, "7");
+        properties.setProperty(SwiftProxy.PROPERTY_SERVER_MEMORY_MANAGER, "direct");
+        JsonNode info = getInfo();
+        assertThat(info.get("swift").get("max_file_size").asLong()).isEqualTo(5368709122L);
+        JsonNode server = info.get("swiftproxy");
+        assertThat(server.get("worker_threads").asInt()).isEqualTo(4);
+        assertThat(server.get("keep_alive_timeout").asInt()).isEqualTo(7);
+        assertThat(server.get("memory_manager").asText()).isEqualTo("direct");
+        assertThat(server.get("selector_threads").asInt()).isPositive();
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        properties.setProperty(SwiftProxy.PROPERTY_VIRTUAL_THREADS, "true");
+        boolean supported = Arrays.stream(Thread.class.getMethods()).anyMatch(m -> m.getName().equals("ofVirtual"));
+        // older JVMs fall back to the worker pool
+        JsonNode server = getInfo().get("swiftproxy");
+        assertThat(server.get("virtual_threads").asBoolean()).isEqualTo(supported);
+        assertThat(server.has("worker_threads")).isNotEqualTo(supported);
+    }
+
+    private JsonNode getInfo() throws Exception {
+        proxy = SwiftProxy.Builder.builder()
+                .overrides(properties)
+                .build();
+        proxy.start();
+        Response resp = ClientBuilder.newClient().target(proxy.getEndpoint()).path("/info").request().get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        return new ObjectMapper().readTree(resp.readEntity(String.class));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Bounce Storage, Inc. <info@bouncestorage.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bouncestorage.swiftproxy.v1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.ObjectName;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.bouncestorage.swiftproxy.SwiftProxy;
+import com.bouncestorage.swiftproxy.TestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MetricsResourceTest {
+    private static final String CONTAINER = "swiftproxy-metrics-test";
+
+    private SwiftProxy proxy;
+    private WebTarget target;
+
+    @Before
+    public void setup() throws Exception {
+        proxy = TestUtils.setupAndStartProxy();
+        target = ClientBuilder.newClient().target(proxy.getEndpoint());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+        String path = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/blob";
+        Response resp = target.path(path).request().header("X-Auth-Token", authToken)
+                .put(Entity.entity("foo", MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        resp = target.path(path).request().header("X-Auth-Token", authToken).get();
+        assertThat(resp.readEntity(String.class)).isEqualTo("foo");
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/missing").request()
+                .header("X-Auth-Token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+        resp = target.path("/nowhere").request().get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+        resp = target.path("/metrics").request().get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.getMediaType().toString()).startsWith("text/plain");
+        assertThat(scrapeMetrics())
+                .contains("swiftproxy_request_duration_seconds_count{operation=\"object.PUT\"} 1\n")
+                .contains("swiftproxy_requests_total{operation=\"object.GET\",status=\"2xx\"} 1\n")
+                .contains("swiftproxy_requests_total{operation=\"object.GET\",status=\"4xx\"} 1\n")
+                .contains("swiftproxy_requests_total{operation=\"container.POST\",status=\"2xx\"} 1\n")
+                .contains("swiftproxy_requests_total{operation=\"unmatched.other\",status=\"4xx\"} 1\n")
+                .contains("swiftproxy_backend_call_duration_seconds_count{call=\"putBlob\"} 1\n")
+                .contains("swiftproxy_cache_hits_total{cache=\"metadata\"}")
+                .contains("swiftproxy_requests_in_flight 1\n")
+                .containsPattern("swiftproxy_received_bytes_total [1-9]")
+                .containsPattern("swiftproxy_sent_bytes_total [1-9]");
+
+        ObjectName name = new ObjectName("com.bouncestorage.swiftproxy:type=Metrics,port=" + proxy.getPort());
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+                "swiftproxy_request_duration_seconds_count{operation=object.PUT}")).isEqualTo(1.0);
+        proxy.stop();
+        proxy = null;
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+    }
+
+    @Test
+    public void testBackendCalls() throws Exception {
+        proxy.stop();
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_BACKEND_CALLS_HEADER, "true");
+        proxy = TestUtils.setupAndStartProxy(properties);
+        target = ClientBuilder.newClient().target(proxy.getEndpoint());
+
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+        String path = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/blob";
+        Response resp = target.path(path).request().header("X-Auth-Token", authToken)
+                .put(Entity.entity("foo", MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getHeaderString("X-Backend-Calls")).startsWith("1 call, ").contains("; putBlob=1 (");
+        resp = target.path(path).request().header("X-Auth-Token", authToken).header("Range", "bytes=1-").get();
+        assertThat(resp.readEntity(String.class)).isEqualTo("oo");
+        assertThat(resp.getHeaderString("X-Backend-Calls")).startsWith("1 call, ").contains("; getBlob=1 (");
+
+        resp = target.path("/metrics").request().get();
+        assertThat(resp.getHeaderString("X-Backend-Calls")).isEqualTo("0 calls, 0.0 ms");
+        assertThat(scrapeMetrics())
+                .contains("swiftproxy_request_backend_calls_total{operation=\"object.PUT\",call=\"putBlob\"} 1\n")
+                .contains("swiftproxy_request_backend_calls_total{operation=\"object.GET\",call=\"getBlob\"} 1\n")
+                .contains("swiftproxy_request_backend_duration_seconds_count{operation=\"object.GET\"} 1\n");
+    }
+
+    @Test
+    public void testTransactionId() throws Exception {
+        String authToken = TestUtils.createContainer(target, CONTAINER);
+        String path = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/blob";
+        Response resp = target.path(path).request().header("X-Auth-Token", authToken)
+                .put(Entity.entity("foo", MediaType.APPLICATION_OCTET_STREAM));
+        String putId = resp.getHeaderString("X-Trans-Id");
+        assertThat(putId).matches("tx[0-9a-f]{21}-[0-9a-f]{10}");
+        resp = target.path(path).request().header("X-Auth-Token", authToken)
+                .header("X-Trans-Id-Extra", "client/42").get();
+        assertThat(resp.readEntity(String.class)).isEqualTo("foo");
+        assertThat(resp.getHeaderString("X-Trans-Id")).matches("tx[0-9a-f]{21}-[0-9a-f]{10}-client42")
+                .isNotEqualTo(putId);
+
+        assertThat(scrapeMetrics())
+                .contains("swiftproxy_request_first_byte_seconds_count{operation=\"object.GET\"} 1\n");
+    }
+
+    /** Scrape {@code /metrics} once the earlier requests are recorded, which happens just after their response. */
+    private String scrapeMetrics() throws InterruptedException {
+        String metrics = null;
+        for (int i = 0; i < 100; i++) {
+            metrics = target.path("/metrics").request().get(String.class);
+            if (metrics.contains("swiftproxy_requests_in_flight 1\n")) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        return metrics;
+    }
+}
@@ -18,19 +18,33 @@ package com.bouncestorage.swiftproxy.v1;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.bouncestorage.swiftproxy.SwiftProxy;
 import com.bouncestorage.swiftproxy.TestUtils;
 import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 
+import org.jclouds.Constants;
+import org.jclouds.filesystem.reference.FilesystemConstants;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -83,6 +97,43 @@ public final class ObjectResourceTest {
         assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
     }
 
+    @Test
+    public void testMissingContainer() throws Exception {
+        String missing = TestUtils.ACCOUNT_PATH + "/missing-container/" + BLOB_NAME;
+        Response resp = target.path(missing).request().header("x-auth-token", authToken)
+                .put(Entity.entity("foo".getBytes(), MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+        resp = target.path(missing).request().header("x-auth-token", authToken).delete();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+        resp = target.path(missing).request().header("x-auth-token", authToken)
+                .post(Entity.entity("", MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+        putObject(target.path(path), "foo".getBytes());
+        assertThat(copyObject(missing, CONTAINER + "/" + BLOB_NAME).getStatus())
+                .isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+        assertThat(copyObject(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/copy", "missing-container/" + BLOB_NAME)
+                .getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+    }
+
+    @Test
+    public void testCopyAndDelete() throws Exception {
+        assertThat(putObject(target.path(path), "foo".getBytes()).getHeaderString(HttpHeaders.LAST_MODIFIED))
+                .isNotNull();
+        String copyPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/copy";
+        Response resp = copyObject(copyPath, CONTAINER + "/" + BLOB_NAME);
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(Hashing.md5().hashBytes("foo".getBytes())
+                .toString());
+
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).delete();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NO_CONTENT.getStatusCode());
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).delete();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+    }
+
     @Test
     public void testHead() throws Exception {
         String data = "foo";
@@ -95,8 +146,456 @@ public final class ObjectResourceTest {
         assertThat(resp.getMediaType().toString()).isEqualTo(MediaType.APPLICATION_OCTET_STREAM);
     }
 
-    Response putObject(WebTarget putTarget, byte[] data) throws Exception {
+    @Test
+    public void testStaticLargeObject() throws Exception {
+        byte[] data = putStaticLargeObject(8, 1024);
+
+        Response resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.getLength()).isEqualTo(data.length);
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+    }
+
+    @Test
+    public void testStaticLargeObjectOverReadAheadBudget() throws Exception {
+        proxy.stop();
+        Properties properties = new Properties();
+        // every other segment fits in the budget, the others are opened when they are reached
+        properties.setProperty(SwiftProxy.PROPERTY_READ_AHEAD_MEMORY_BUDGET, "1536");
+        proxy = TestUtils.setupAndStartProxy(properties);
+        target = ClientBuilder.newClient().target(proxy.getEndpoint());
+        authToken = TestUtils.createContainer(target, CONTAINER);
+        byte[] data = putStaticLargeObject(8, 1024);
+
+        Response resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+    }
+
+    @Test
+    public void testStaticLargeObjectRange() throws Exception {
+        byte[] data = putStaticLargeObject(8, 1024);
+
+        assertThat(getRange("bytes=1000-3000")).isEqualTo(Arrays.copyOfRange(data, 1000, 3001));
+        assertThat(getRange("bytes=-100")).isEqualTo(Arrays.copyOfRange(data, data.length - 100, data.length));
+        assertThat(getRange("bytes=8000-")).isEqualTo(Arrays.copyOfRange(data, 8000, data.length));
+        assertThat(getRange("bytes=2048-2048")).isEqualTo(Arrays.copyOfRange(data, 2048, 2049));
+        assertByteRanges("bytes=0-9,5000-99999", data, MediaType.APPLICATION_JSON,
+                new long[][]{{0, 9}, {5000, data.length - 1}});
+        assertThat(getRange("bytes=0-9,99999-")).isEqualTo(Arrays.copyOfRange(data, 0, 10));
+
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header("Range", "bytes=8192-").get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode());
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        byte[] data = "0123456789abcdefghij".getBytes();
+        putObject(target.path(path), data);
+
+        assertByteRanges("bytes=0-1,5-7,-3", data, MediaType.APPLICATION_OCTET_STREAM,
+                new long[][]{{0, 1}, {5, 7}, {17, 19}});
+        assertByteRanges("bytes=18-,2-2", data, MediaType.APPLICATION_OCTET_STREAM,
+                new long[][]{{18, 19}, {2, 2}});
+        assertByteRanges("bytes=0-4,3-6", data, MediaType.APPLICATION_OCTET_STREAM,
+                new long[][]{{0, 4}, {3, 6}});
+        // unsatisfiable ranges are dropped unless none is left
+        assertByteRanges("bytes=0-1,999999-", data, MediaType.APPLICATION_OCTET_STREAM,
+                new long[][]{{0, 1}});
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header("Range", "bytes=20-,999999-").get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode());
+    }
+
+    @Test
+    public void testTooManyRanges() throws Exception {
+        byte[] data = new byte[200];
+        new Random().nextBytes(data);
+        putObject(target.path(path), data);
+
+        StringBuilder ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 50; i++) {
+            ranges.append(',').append(i * 2).append('-').append(i * 2);
+        }
+        assertThat(getRange(ranges.toString())).isEqualTo(data);
+        // every range overlaps the others
+        assertThat(getRange("bytes=0-,1-,2-,3-")).isEqualTo(data);
+    }
+
+    @Test
+    public void testStaticLargeObjectOverwrite() throws Exception {
+        putStaticLargeObject(2, 16);
+        Response resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getLength()).isEqualTo(32);
+        resp.close();
+
+        // parsed manifests are cached, the new manifest must still be used
+        byte[] data = putStaticLargeObject(3, 16);
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+    }
+
+    @Test
+    public void testStaticLargeObjectManifest() throws Exception {
+        putStaticLargeObject(2, 16);
+
+        Response resp = target.path(path).queryParam("multipart-manifest", "get").request()
+                .header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(String.class))
+                .contains("\"path\":\"/" + CONTAINER + "/" + BLOB_NAME + "-segment-1\"")
+                .contains("\"size_bytes\":16");
+    }
+
+    @Test
+    public void testInvalidManifest() throws Exception {
+        Response resp = target.path(path).queryParam("multipart-manifest", "put").request()
+                .header("x-auth-token", authToken)
+                .put(Entity.entity("{\"path\": \"/foo/bar\"}", MediaType.APPLICATION_JSON));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+
+        for (String trailing : new String[]{"[]garbage", "[][]"}) {
+            resp = target.path(path).queryParam("multipart-manifest", "put").request()
+                    .header("x-auth-token", authToken)
+                    .put(Entity.entity(trailing, MediaType.APPLICATION_JSON));
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testDynamicLargeObject() throws Exception {
+        proxy.stop();
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_METADATA_CACHE_SIZE, "100");
+        properties.setProperty(SwiftProxy.PROPERTY_DLO_CACHE_SIZE, "100");
+        proxy = TestUtils.setupAndStartProxy(properties);
+        target = ClientBuilder.newClient().target(proxy.getEndpoint());
+        authToken = TestUtils.createContainer(target, CONTAINER);
+
+        String segmentPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/" + BLOB_NAME + "-segments/";
+        putObject(target.path(segmentPath + "1"), "foo".getBytes());
+        putObject(target.path(segmentPath + "2"), "bar".getBytes());
         Response resp = target.path(path).request()
+                .header("x-auth-token", authToken)
+                .header("X-Object-Manifest", CONTAINER + "/" + BLOB_NAME + "-segments/")
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(String.class)).isEqualTo("foobar");
+
+        // segments added through the proxy are seen right away
+        putObject(target.path(segmentPath + "3"), "baz".getBytes());
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.readEntity(String.class)).isEqualTo("foobarbaz");
+        resp = target.path(path).request().header("x-auth-token", authToken).head();
+        assertThat(resp.getLength()).isEqualTo(9);
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        byte[] data = "0123456789".getBytes();
+        putObject(target.path(path), data);
+        String eTag = Hashing.md5().hashBytes(data).toString();
+
+        assertThat(getConditional(HttpHeaders.IF_NONE_MATCH, eTag).getStatus())
+                .isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        assertThat(getConditional(HttpHeaders.IF_MATCH, "foo").getStatus())
+                .isEqualTo(Response.Status.PRECONDITION_FAILED.getStatusCode());
+        assertThat(getRange("bytes=2-4")).isEqualTo("234".getBytes());
+
+        Response resp = target.path(TestUtils.ACCOUNT_PATH + "/missing-container/" + BLOB_NAME).request()
+                .header("x-auth-token", authToken).header("Range", "bytes=2-4").get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+    }
+
+    @Test
+    public void testConditionalLargeObjectGet() throws Exception {
+        byte[] data = putStaticLargeObject(4, 16);
+        String eTag = target.path(path).request().header("x-auth-token", authToken).head()
+                .getHeaderString(HttpHeaders.ETAG);
+
+        // the conditions apply to the combined object, not to the manifest
+        assertThat(getConditional(HttpHeaders.IF_NONE_MATCH, eTag).getStatus())
+                .isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header(HttpHeaders.IF_MATCH, eTag).header("Range", "bytes=20-39").get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(Arrays.copyOfRange(data, 20, 40));
+
+        String segmentPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/" + BLOB_NAME + "-segments/";
+        putObject(target.path(segmentPath + "1"), "foo".getBytes());
+        putObject(target.path(segmentPath + "2"), "bar".getBytes());
+        resp = target.path(path).request()
+                .header("x-auth-token", authToken)
+                .header("X-Object-Manifest", CONTAINER + "/" + BLOB_NAME + "-segments/")
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        assertThat(getRange("bytes=2-4")).isEqualTo("oba".getBytes());
+    }
+
+    @Test
+    public void testFilesystemSendfile() throws Exception {
+        Path baseDir = Files.createTempDirectory("swiftproxy");
+        try {
+            proxy.stop();
+            Properties properties = new Properties();
+            properties.setProperty(SwiftProxy.PROPERTY_ENDPOINT, "http://127.0.0.1:0");
+            properties.setProperty(Constants.PROPERTY_PROVIDER, "filesystem");
+            properties.setProperty(Constants.PROPERTY_IDENTITY, "test:tester");
+            properties.setProperty(Constants.PROPERTY_CREDENTIAL, "testing");
+            properties.setProperty(FilesystemConstants.PROPERTY_BASEDIR, baseDir.toString());
+            proxy = SwiftProxy.Builder.builder().overrides(properties).build();
+            proxy.start();
+            target = ClientBuilder.newClient().target(proxy.getEndpoint());
+            authToken = TestUtils.createContainer(target, CONTAINER);
+
+            byte[] data = new byte[1024 * 1024 + 7];
+            new Random().nextBytes(data);
+            putObject(target.path(path), data);
+
+            Response resp = target.path(path).request().header("x-auth-token", authToken).get();
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+            assertThat(resp.getMediaType().toString()).isEqualTo(MediaType.APPLICATION_OCTET_STREAM);
+            assertThat(resp.getLength()).isEqualTo(data.length);
+            assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(Hashing.md5().hashBytes(data).toString());
+            assertThat(resp.getLastModified()).isNotNull();
+            assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+
+            assertThat(getRange("bytes=1000-300000")).isEqualTo(Arrays.copyOfRange(data, 1000, 300001));
+            assertThat(getRange("bytes=-100")).isEqualTo(Arrays.copyOfRange(data, data.length - 100, data.length));
+            assertByteRanges("bytes=0-9,500-599", data, MediaType.APPLICATION_OCTET_STREAM,
+                    new long[][]{{0, 9}, {500, 599}});
+
+            // the connection is still usable after a sendfile
+            resp = target.path(path).request().header("x-auth-token", authToken).head();
+            assertThat(resp.getLength()).isEqualTo(data.length);
+
+            // the whole object and the single ranges, but not the multi-range response
+            resp = target.path("/metrics").request().get();
+            assertThat(resp.readEntity(String.class)).contains("swiftproxy_sendfile_responses_total 3\n");
+        } finally {
+            MoreFiles.deleteRecursively(baseDir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        startMultipartUploadProxy();
+
+        byte[] data = new byte[300007];
+        new Random().nextBytes(data);
+        String eTag = Hashing.md5().hashBytes(data).toString();
+        Response resp = target.path(path).request().header("x-auth-token", authToken).header(HttpHeaders.ETAG, eTag)
+                .put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+        resp = target.path(path).request().header("x-auth-token", authToken).head();
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        assertThat(resp.getHeaders().keySet()).noneMatch(h -> h.toLowerCase().contains("swiftproxy"));
+        // conditions apply to the MD5 rather than to the ETag of the backend
+        assertThat(getConditional("If-Match", eTag).getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(getConditional("If-None-Match", eTag).getStatus())
+                .isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        String otherETag = (eTag.charAt(0) == '0' ? "1" : "0") + eTag.substring(1);
+        assertThat(getConditional("If-Match", otherETag).getStatus())
+                .isEqualTo(Response.Status.PRECONDITION_FAILED.getStatusCode());
+        resp = target.path(path).request().header("x-auth-token", authToken).header("If-Match", eTag)
+                .header("Range", "bytes=10-19").get();
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(Arrays.copyOfRange(data, 10, 20));
+
+        // a chunked PUT without an ETag is uploaded in parts too, its MD5 is only known at its end, when it can no
+        // longer be stored, so the backend's ETag is reported
+        String chunkedPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/chunked";
+        resp = target.path(chunkedPath).request()
+                .header("x-auth-token", authToken)
+                .put(Entity.entity(new ByteArrayInputStream(data), MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        String chunkedETag = resp.getHeaderString(HttpHeaders.ETAG);
+        assertThat(chunkedETag).matches("\"?[0-9a-f]{32}-5\"?");
+        resp = target.path(chunkedPath).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(chunkedETag);
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+        // clients cannot set the ETag of an object
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/forged").request()
+                .header("x-auth-token", authToken).header("X-Object-Meta-Swiftproxy-ETag", eTag)
+                .put(Entity.entity(new byte[1], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+
+        resp = target.path(path).request().header("x-auth-token", authToken)
+                .header(HttpHeaders.ETAG, Hashing.md5().hashBytes(new byte[1]).toString())
+                .put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(422);
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(data);
+
+        resp = target.path("/metrics").request().get();
+        assertThat(resp.readEntity(String.class))
+                .contains("swiftproxy_multipart_uploads_total 3\n")
+                .contains("swiftproxy_multipart_upload_parts_total 15\n")
+                .contains("swiftproxy_multipart_upload_aborts_total 1\n");
+    }
+
+    @Test
+    public void testMultipartUploadedObjectCopyAndListing() throws Exception {
+        startMultipartUploadProxy();
+
+        byte[] data = new byte[300007];
+        new Random().nextBytes(data);
+        String eTag = Hashing.md5().hashBytes(data).toString();
+        String segmentPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/" + BLOB_NAME + "-segments/";
+        Response resp = target.path(segmentPath + "1").request().header("x-auth-token", authToken)
+                .header(HttpHeaders.ETAG, eTag).put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        putObject(target.path(segmentPath + "2"), "foo".getBytes());
+
+        // listings do not carry the MD5, the backend's ETag is listed unless the proxy looks it up
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER).queryParam("format", "json").request()
+                .header("x-auth-token", authToken).get();
+        assertThat(resp.readEntity(String.class))
+                .containsPattern("\\{\"name\":\"" + BLOB_NAME + "-segments/1\",\"hash\":\"[0-9a-f]{32}-5\"");
+
+        // the segment uploaded in parts is still read, checked on its size
+        resp = target.path(path).request()
+                .header("x-auth-token", authToken)
+                .header("X-Object-Manifest", CONTAINER + "/" + BLOB_NAME + "-segments/")
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        resp = target.path(path).request().header("x-auth-token", authToken).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        byte[] expected = Arrays.copyOf(data, data.length + 3);
+        System.arraycopy("foo".getBytes(), 0, expected, data.length, 3);
+        assertThat(resp.readEntity(byte[].class)).isEqualTo(expected);
+
+        // copies are checked against and keep the MD5
+        String source = CONTAINER + "/" + BLOB_NAME + "-segments/1";
+        String copyPath = TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/copy";
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).header("X-Copy-From", source)
+                .header(HttpHeaders.IF_MATCH, eTag).put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        String otherETag = (eTag.charAt(0) == '0' ? "1" : "0") + eTag.substring(1);
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).header("X-Copy-From", source)
+                .header(HttpHeaders.IF_MATCH, otherETag)
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.PRECONDITION_FAILED.getStatusCode());
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).header("X-Copy-From", source)
+                .header("X-Fresh-Metadata", "true").header("X-Object-Meta-Foo", "bar")
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        resp = target.path(copyPath).request().header("x-auth-token", authToken).head();
+        assertThat(resp.getHeaderString(HttpHeaders.ETAG)).isEqualTo(eTag);
+        assertThat(resp.getHeaderString("X-Object-Meta-Foo")).isEqualTo("bar");
+    }
+
+    @Test
+    public void testMultipartUploadListedMD5() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(SwiftProxy.PROPERTY_MULTIPART_UPLOAD_LIST_MD5, "true");
+        startMultipartUploadProxy(properties);
+
+        byte[] data = new byte[300007];
+        new Random().nextBytes(data);
+        String eTag = Hashing.md5().hashBytes(data).toString();
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header(HttpHeaders.ETAG, eTag).put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+        resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER).queryParam("format", "json").request()
+                .header("x-auth-token", authToken).get();
+        assertThat(resp.readEntity(String.class))
+                .contains("{\"name\":\"" + BLOB_NAME + "\",\"hash\":\"" + eTag + "\"");
+    }
+
+    void startMultipartUploadProxy() throws Exception {
+        startMultipartUploadProxy(new Properties());
+    }
+
+    void startMultipartUploadProxy(Properties properties) throws Exception {
+        proxy.stop();
+        properties.setProperty(SwiftProxy.PROPERTY_MULTIPART_UPLOAD_THRESHOLD, "100000");
+        properties.setProperty(SwiftProxy.PROPERTY_MULTIPART_UPLOAD_PART_SIZE, "65536");
+        properties.setProperty(SwiftProxy.PROPERTY_MULTIPART_UPLOAD_MEMORY_BUDGET, "262144");
+        proxy = TestUtils.setupAndStartProxy(properties);
+        target = ClientBuilder.newClient().target(proxy.getEndpoint());
+        authToken = TestUtils.createContainer(target, CONTAINER);
+    }
+
+    byte[] getRange(String range) {
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header("Range", range).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        byte[] body = resp.readEntity(byte[].class);
+        assertThat(resp.getLength()).isEqualTo(body.length);
+        return body;
+    }
+
+    Response copyObject(String destPath, String source) {
+        return target.path(destPath).request().header("x-auth-token", authToken).header("X-Copy-From", source)
+                .put(Entity.entity(new byte[0], MediaType.APPLICATION_OCTET_STREAM));
+    }
+
+    Response getConditional(String header, String eTag) {
+        Response resp = target.path(path).request().header("x-auth-token", authToken).header(header, eTag).get();
+        resp.close();
+        return resp;
+    }
+
+    void assertByteRanges(String range, byte[] data, String contentType, long[][] expectedRanges) throws Exception {
+        Response resp = target.path(path).request().header("x-auth-token", authToken)
+                .header("Range", range).get();
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.PARTIAL_CONTENT.getStatusCode());
+        MediaType type = resp.getMediaType();
+        assertThat(type.toString()).startsWith("multipart/byteranges");
+        String boundary = type.getParameters().get("boundary");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (long[] r : expectedRanges) {
+            expected.write(String.format("%s--%s\r\nContent-Type: %s\r\nContent-Range: bytes %d-%d/%d\r\n\r\n",
+                    expected.size() == 0 ? "" : "\r\n", boundary, contentType, r[0], r[1],
+                    data.length).getBytes());
+            expected.write(data, (int) r[0], (int) (r[1] - r[0] + 1));
+        }
+        expected.write(("\r\n--" + boundary + "--\r\n").getBytes());
+
+        byte[] body = resp.readEntity(byte[].class);
+        assertThat(resp.getLength()).isEqualTo(body.length);
+        assertThat(body).isEqualTo(expected.toByteArray());
+    }
+
+    byte[] putStaticLargeObject(int numSegments, int segmentSize) throws Exception {
+        Random random = new Random();
+        byte[] data = new byte[numSegments * segmentSize];
+        random.nextBytes(data);
+
+        List<String> manifest = new ArrayList<>();
+        for (int i = 0; i < numSegments; i++) {
+            byte[] segment = Arrays.copyOfRange(data, i * segmentSize, (i + 1) * segmentSize);
+            String segmentName = BLOB_NAME + "-segment-" + i;
+            Response resp = target.path(TestUtils.ACCOUNT_PATH + "/" + CONTAINER + "/" + segmentName).request()
+                    .header("x-auth-token", authToken)
+                    .put(Entity.entity(segment, MediaType.APPLICATION_OCTET_STREAM));
+            assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+            manifest.add(String.format("{\"path\": \"/%s/%s\", \"etag\": \"%s\", \"size_bytes\": %d}",
+                    CONTAINER, segmentName, Hashing.md5().hashBytes(segment), segmentSize));
+        }
+
+        Response resp = target.path(path).queryParam("multipart-manifest", "put").request()
+                .header("x-auth-token", authToken)
+                .put(Entity.entity("[" + Joiner.on(", ").join(manifest) + "]", MediaType.APPLICATION_JSON));
+        assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        return data;
+    }
+
+    Response putObject(WebTarget putTarget, byte[] data) throws Exception {
+        Response resp = putTarget.request()
                 .header("x-auth-token", authToken)
                 .put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
         assertThat(resp.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());